@@ -1,13 +1,16 @@
 package com.example.chat.client;
 
+import com.example.chat.common.MessageStream;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -24,14 +27,38 @@ public class ClientState {
 
     private Socket socket;
 
-    private ObjectInputStream input;
-
-    private ObjectOutputStream output;
+    private MessageStream stream;
 
     private volatile String username;
 
     private volatile Optional<String> currentRoom = Optional.empty();
 
+    private volatile long historyCursor; // 当前房间更早一页历史的游标，0 表示没有更早的消息
+
+    private volatile String searchQuery; // 上一次搜索的关键词，用于继续翻页
+
+    private final Set<String> onlineUsers = ConcurrentHashMap.newKeySet(); // 本地维护的在线用户名单
+
+    private volatile long presenceVersion = -1; // 在线用户名单的版本号，-1 表示尚未取得快照或正在重新同步
+
+    private volatile boolean liteLogin; // 服务器使用轻量登录，在线名单需要按需请求快照
+
+    private volatile boolean userListRequested; // 用户请求了在线用户列表，收到快照后显示
+
+    private volatile long searchCursor; // 上一次搜索下一页的游标，0 表示没有更多结果
+
+    private final Map<String, RoomSummary> rooms = new ConcurrentHashMap<>(); // 本地维护的聊天室目录
+
+    private volatile long roomDirectoryVersion = -1; // 聊天室目录的版本号，-1 表示尚未取得快照或正在重新同步
+
+    private volatile boolean roomListRequested; // 用户请求了聊天室列表，收到快照后显示
+
+    private volatile String browseSort; // 上一次目录查询的排序方式，用于继续翻页
+
+    private volatile String browsePrefix; // 上一次目录查询的名称前缀
+
+    private volatile String browseCursor; // 上一次目录查询下一页的游标，null 表示没有更多结果
+
     private final AtomicBoolean running = new AtomicBoolean(false);
 
     public boolean isRunning() {
@@ -42,13 +69,71 @@ public class ClientState {
         running.set(value);
     }
 
+    /**
+     * 用带版本号的快照替换本地在线用户名单
+     */
+    public void applyPresenceSnapshot(long version, Collection<String> users) {
+        onlineUsers.clear();
+        onlineUsers.addAll(users);
+        presenceVersion = version;
+    }
+
+    /**
+     * 按顺序应用在线状态增量
+     * 增量在服务器锁外扇出，可能晚于已经包含它的快照到达，这样的增量直接跳过
+     *
+     * @return false 如果增量的起始版本与本地版本不一致，需要重新请求快照
+     */
+    public boolean applyPresenceDelta(long from, long version, Collection<String> joined, Collection<String> left) {
+        if (version <= presenceVersion) {
+            return true;
+        }
+        if (from != presenceVersion) {
+            return false;
+        }
+        onlineUsers.addAll(joined);
+        onlineUsers.removeAll(left);
+        presenceVersion = version;
+        return true;
+    }
+
+    /**
+     * 用带版本号的快照替换本地聊天室目录
+     */
+    public void applyRoomSnapshot(long version, Collection<RoomSummary> snapshot) {
+        rooms.clear();
+        snapshot.forEach(room -> rooms.put(room.getName(), room));
+        roomDirectoryVersion = version;
+    }
+
+    /**
+     * 按顺序应用聊天室目录增量
+     * 快照可能已经包含紧随其后的那次变更，因此增量按名称覆盖或删除，重复应用没有影响；
+     * 增量在服务器锁外发送，可能晚于已经包含它的快照到达，这样的增量直接跳过
+     *
+     * @return false 如果增量的起始版本与本地版本不一致，需要重新请求快照
+     */
+    public boolean applyRoomDelta(long from, long version, RoomSummary room, boolean removed) {
+        if (version <= roomDirectoryVersion) {
+            return true;
+        }
+        if (from != roomDirectoryVersion) {
+            return false;
+        }
+        if (removed) {
+            rooms.remove(room.getName());
+        } else {
+            rooms.put(room.getName(), room);
+        }
+        roomDirectoryVersion = version;
+        return true;
+    }
+
     public void close() {
         setRunning(false);
         try {
-            if (input != null)
-                input.close();
-            if (output != null)
-                output.close();
+            if (stream != null)
+                stream.close();
             if (socket != null)
                 socket.close();
             scanner.close();
@@ -0,0 +1,45 @@
+package com.example.chat.client;
+
+import com.example.chat.common.Message;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 服务器繁忙（LOGIN_RETRY_AFTER）时的重连退避
+ * 等待时间不少于服务器建议的间隔，每次重试的随机抖动范围翻倍，
+ * 同时被拒绝的大量客户端会分散在不同时刻重连，而不是再次同时涌向服务器
+ */
+public class LoginBackoff {
+    public static final int MAX_ATTEMPTS = 8;
+    private static final long MIN_DELAY_MILLIS = 100;
+    private static final long DEFAULT_RETRY_AFTER_MILLIS = 1000; // 服务器未给出建议间隔（如连接被直接关闭）时使用
+    private static final long MAX_DELAY_MILLIS = 30_000;
+
+    private int attempts;
+
+    /**
+     * 是否还可以继续重试
+     */
+    public boolean hasNext() {
+        return attempts < MAX_ATTEMPTS;
+    }
+
+    /**
+     * 下一次重连前的等待时间：[建议间隔, 建议间隔 × (1 + 2^重试次数))，不超过上限
+     *
+     * @param retryAfter 服务器的 LOGIN_RETRY_AFTER 回复，连接在回复前被关闭或无法连接时为 null
+     */
+    public long nextDelay(Message retryAfter) {
+        long base = Math.max(MIN_DELAY_MILLIS, retryAfterMillis(retryAfter));
+        long jitter = Math.min(MAX_DELAY_MILLIS, base << Math.min(attempts++, 16));
+        return Math.min(MAX_DELAY_MILLIS, base + ThreadLocalRandom.current().nextLong(jitter));
+    }
+
+    private static long retryAfterMillis(Message retryAfter) {
+        return retryAfter != null && retryAfter.getData() instanceof Map<?, ?> data
+                && data.get("retryAfterMillis") instanceof Number millis
+                ? millis.longValue()
+                : DEFAULT_RETRY_AFTER_MILLIS;
+    }
+}
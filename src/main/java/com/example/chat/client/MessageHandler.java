@@ -10,11 +10,17 @@ import java.util.Optional;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.BiConsumer;
+import java.util.Comparator;
+import java.util.Date;
+import java.text.SimpleDateFormat;
+import java.util.stream.Collectors;
 
 /**
  * 消息处理器，使用函数式方式处理不同类型的消息
  */
 public class MessageHandler {
+    private static final Map<String, String> SORT_NAMES = Map.of(
+            "name", "按名称", "members", "按人数", "active", "按最近活跃");
     private final ClientState state;
     private final Map<MessageType, BiConsumer<Message, ClientState>> handlers;
     private final MessageDisplay display;
@@ -36,13 +42,133 @@ public class MessageHandler {
             display.displayInfo("=== 历史消息结束 ===");
         });
 
+        handlers.put(MessageType.ROOM_HISTORY_PAGE_RESPONSE, (message, state) -> {
+            if (!state.getCurrentRoom().map(room -> room.equals(message.getRoomName())).orElse(false)) {
+                return;
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> page = (Map<String, Object>) message.getData();
+            @SuppressWarnings("unchecked")
+            List<Message> history = (List<Message>) page.get("messages");
+            state.setHistoryCursor(cursorOf(page.get("before")));
+            if (history.isEmpty()) {
+                display.displayInfo("没有更早的历史消息了");
+                return;
+            }
+            display.displayInfo("=== 更早的历史消息 ===");
+            history.forEach(msg -> display.display(msg, state.getUsername()));
+            display.displayInfo(state.getHistoryCursor() > 0
+                    ? "=== 以上为更早的历史消息，继续输入 /history 向前翻页 ==="
+                    : "=== 已到达最早的历史消息 ===");
+        });
+
+        handlers.put(MessageType.ROOM_SEARCH_RESPONSE, (message, state) -> {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> page = (Map<String, Object>) message.getData();
+            @SuppressWarnings("unchecked")
+            List<Message> hits = (List<Message>) page.get("messages");
+            String query = (String) page.get("query");
+            state.setSearchQuery(query);
+            state.setSearchCursor(cursorOf(page.get("before")));
+            if (hits.isEmpty()) {
+                display.displayInfo("没有找到包含 \"" + query + "\" 的消息");
+                return;
+            }
+            display.displayInfo("=== 搜索结果：" + query + "（从新到旧）===");
+            hits.forEach(msg -> display.display(msg, state.getUsername()));
+            display.displayInfo(state.getSearchCursor() > 0
+                    ? "=== 输入 /search 查看更多结果 ==="
+                    : "=== 搜索结果结束 ===");
+        });
+
+        handlers.put(MessageType.PRESENCE_SNAPSHOT, (message, state) -> {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> snapshot = (Map<String, Object>) message.getData();
+            @SuppressWarnings("unchecked")
+            List<String> users = (List<String>) snapshot.get("users");
+            state.applyPresenceSnapshot(cursorOf(snapshot.get("version")), users);
+            if (state.isUserListRequested()) {
+                state.setUserListRequested(false);
+                displayOnlineUsers();
+            }
+        });
+
+        handlers.put(MessageType.PRESENCE_DELTA, (message, state) -> {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> delta = (Map<String, Object>) message.getData();
+            @SuppressWarnings("unchecked")
+            List<String> joined = (List<String>) delta.get("joined");
+            @SuppressWarnings("unchecked")
+            List<String> left = (List<String>) delta.get("left");
+            if (state.getPresenceVersion() < 0) {
+                return; // 正在等待快照，之前的增量已包含在快照中
+            }
+            if (!state.applyPresenceDelta(cursorOf(delta.get("from")), cursorOf(delta.get("version")), joined, left)) {
+                // 漏掉了增量（如发送积压时被丢弃），重新请求快照
+                state.setPresenceVersion(-1);
+                try {
+                    sendMessage(Message.createPresenceSnapshotRequest(state.getUsername()));
+                } catch (IOException e) {
+                    display.displayError("同步在线用户失败: " + e.getMessage());
+                }
+                return;
+            }
+            joined.stream()
+                    .filter(user -> !user.equals(state.getUsername()))
+                    .forEach(user -> display.display(Message.createSystemMessage(
+                            MessageType.USER_JOINED_NOTIFICATION, "用户 " + user + " 上线了"), state.getUsername()));
+            left.forEach(user -> display.display(Message.createSystemMessage(
+                    MessageType.USER_LEFT_NOTIFICATION, "用户 " + user + " 下线了"), state.getUsername()));
+        });
+
+        handlers.put(MessageType.ROOM_DIRECTORY_SNAPSHOT, (message, state) -> {
+            applyRoomSnapshot(message);
+            if (state.isRoomListRequested()) {
+                state.setRoomListRequested(false);
+                displayRooms();
+            }
+        });
+
+        handlers.put(MessageType.ROOM_DIRECTORY_PAGE, (message, state) -> {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> page = (Map<String, Object>) message.getData();
+            List<?> rooms = (List<?>) page.get("rooms");
+            state.setBrowseSort((String) page.get("sort"));
+            state.setBrowsePrefix((String) page.get("prefix"));
+            state.setBrowseCursor((String) page.get("cursor"));
+            if (rooms.isEmpty()) {
+                display.displayInfo("没有找到符合条件的聊天室");
+                return;
+            }
+            display.displayInfo("=== 聊天室目录（" + SORT_NAMES.getOrDefault(state.getBrowseSort(), state.getBrowseSort()) + "）===");
+            rooms.forEach(room -> {
+                Map<?, ?> summary = (Map<?, ?>) room;
+                display.displayInfo(RoomSummary.of(summary) + "  最近活跃 "
+                        + new SimpleDateFormat("MM-dd HH:mm:ss").format(new Date(cursorOf(summary.get("lastActivity")))));
+            });
+            display.displayInfo(state.getBrowseCursor() != null
+                    ? "=== 输入 /browse 查看下一页 ==="
+                    : "=== 目录结束 ===");
+        });
+
+        BiConsumer<Message, ClientState> roomDelta = (message, state) -> {
+            applyRoomDelta(message);
+            display.display(message, state.getUsername());
+        };
+        handlers.put(MessageType.ROOM_CREATED_NOTIFICATION, roomDelta);
+        handlers.put(MessageType.ROOM_DESTROYED_NOTIFICATION, roomDelta);
+        handlers.put(MessageType.ROOM_UPDATED_NOTIFICATION, roomDelta);
+
         handlers.put(MessageType.JOIN_ROOM_SUCCESS, (message, state) -> {
             state.setCurrentRoom(Optional.ofNullable(message.getRoomName()));
+            state.setHistoryCursor(cursorOf(message.getData()));
+            state.setSearchQuery(null);
             display.display(message, state.getUsername());
         });
 
         handlers.put(MessageType.LEAVE_ROOM_SUCCESS, (message, state) -> {
             state.setCurrentRoom(Optional.empty());
+            state.setHistoryCursor(0);
             display.display(message, state.getUsername());
         });
 
@@ -64,6 +190,68 @@ public class MessageHandler {
         });
     }
 
+    /**
+     * 解析服务器返回的历史游标，旧版服务器不提供游标时为 0
+     */
+    public static long cursorOf(Object data) {
+        return data instanceof Number number ? number.longValue() : 0;
+    }
+
+    /**
+     * 用服务器发送的快照替换本地聊天室目录
+     */
+    public void applyRoomSnapshot(Message message) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> snapshot = (Map<String, Object>) message.getData();
+        List<RoomSummary> rooms = ((List<?>) snapshot.get("rooms")).stream()
+                .map(room -> RoomSummary.of((Map<?, ?>) room))
+                .toList();
+        state.applyRoomSnapshot(cursorOf(snapshot.get("version")), rooms);
+    }
+
+    /**
+     * 把聊天室创建、销毁或变更通知中携带的增量应用到本地目录，版本号不连续时请求快照重新同步
+     */
+    public void applyRoomDelta(Message message) {
+        if (!(message.getData() instanceof Map<?, ?> delta) || state.getRoomDirectoryVersion() < 0) {
+            return; // 通知不带增量，或正在等待快照（之前的增量已包含在快照中）
+        }
+        boolean removed = message.getType() == MessageType.ROOM_DESTROYED_NOTIFICATION;
+        if (!state.applyRoomDelta(cursorOf(delta.get("from")), cursorOf(delta.get("version")),
+                RoomSummary.of(delta), removed)) {
+            state.setRoomDirectoryVersion(-1);
+            try {
+                sendMessage(Message.createRoomDirectoryRequest(state.getUsername()));
+            } catch (IOException e) {
+                display.displayError("同步聊天室列表失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 显示本地在线用户名单
+     */
+    public void displayOnlineUsers() {
+        display.display(Message.builder()
+                .type(MessageType.USER_LIST_RESPONSE)
+                .data(state.getOnlineUsers().stream().sorted().toList())
+                .build(), state.getUsername());
+    }
+
+    /**
+     * 显示本地聊天室目录
+     */
+    public void displayRooms() {
+        if (state.getRooms().isEmpty()) {
+            display.displayInfo("当前没有可用的聊天室");
+            return;
+        }
+        display.displayInfo("可用聊天室：" + state.getRooms().values().stream()
+                .sorted(Comparator.comparing(RoomSummary::getName))
+                .map(RoomSummary::toString)
+                .collect(Collectors.joining(", ")));
+    }
+
     /**
      * 处理接收到的消息
      */
@@ -78,8 +266,7 @@ public class MessageHandler {
      */
     public void sendMessage(Message message) throws IOException {
         synchronized (state) {
-            state.getOutput().writeObject(message);
-            state.getOutput().flush();
+            state.getStream().writeMessage(message);
         }
     }
 }
\ No newline at end of file
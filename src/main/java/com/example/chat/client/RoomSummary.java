@@ -0,0 +1,35 @@
+package com.example.chat.client;
+
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * 本地聊天室目录中的一项：名称、人数和是否设置了密码
+ */
+@Getter
+public class RoomSummary {
+    private final String name;
+    private final int members;
+    private final boolean locked;
+
+    public RoomSummary(String name, int members, boolean locked) {
+        this.name = name;
+        this.members = members;
+        this.locked = locked;
+    }
+
+    /**
+     * 解析服务器发送的房间摘要 {name, members, password}
+     */
+    public static RoomSummary of(Map<?, ?> data) {
+        return new RoomSummary((String) data.get("name"),
+                data.get("members") instanceof Number members ? members.intValue() : 0,
+                Boolean.TRUE.equals(data.get("password")));
+    }
+
+    @Override
+    public String toString() {
+        return name + "（" + members + "人" + (locked ? "，有密码" : "") + "）";
+    }
+}
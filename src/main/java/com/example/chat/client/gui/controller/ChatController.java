@@ -16,6 +16,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import com.example.chat.client.ClientState;
 import com.example.chat.client.MessageHandler;
+import com.example.chat.client.RoomSummary;
 import com.example.chat.client.gui.util.AlertUtil;
 import com.example.chat.common.Message;
 
@@ -28,6 +29,7 @@ import java.util.*;
 @Slf4j
 public class ChatController {
     private static final String FONT_FAMILY = "Noto Sans SC";
+    private static final int HISTORY_PAGE_SIZE = 30; // 每次加载更早历史的条数
     private static final SimpleDateFormat TIME_FORMAT = new SimpleDateFormat("HH:mm:ss");
 
     private final ClientState clientState;
@@ -41,6 +43,7 @@ public class ChatController {
     private TextArea messageInput;
     private Button sendButton;
     private Label currentRoomLabel;
+    private Button loadHistoryButton;
 
     // 数据
     private final ObservableList<String> roomList = FXCollections.observableArrayList();
@@ -57,7 +60,7 @@ public class ChatController {
 
         initializeUI();
         startMessageReceiver();
-        requestRoomList();
+        requestRoomDirectory();
         setupMessageHistoryListener();
     }
 
@@ -162,10 +165,21 @@ public class ChatController {
         chatScrollPane.setHbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
         VBox.setVgrow(chatScrollPane, Priority.ALWAYS);
 
+        // 按需加载更早的历史消息
+        loadHistoryButton = new Button("加载更早的消息");
+        loadHistoryButton.setFont(Font.font(FONT_FAMILY, 12));
+        loadHistoryButton.setOnAction(e -> requestOlderHistory());
+        loadHistoryButton.setDisable(true);
+
+        Region spacer = new Region();
+        HBox.setHgrow(spacer, Priority.ALWAYS);
+        HBox header = new HBox(10, currentRoomLabel, spacer, loadHistoryButton);
+        header.setAlignment(Pos.CENTER_LEFT);
+
         // 消息输入区域
         HBox inputArea = createInputArea();
 
-        rightPanel.getChildren().addAll(currentRoomLabel, chatScrollPane, inputArea);
+        rightPanel.getChildren().addAll(header, chatScrollPane, inputArea);
         return rightPanel;
     }
 
@@ -211,7 +225,8 @@ public class ChatController {
                 setText(null);
                 setStyle("");
             } else {
-                setText(room);
+                RoomSummary summary = clientState.getRooms().get(room);
+                setText(summary != null ? summary.toString() : room);
                 setFont(Font.font(FONT_FAMILY, 14));
 
                 if (room.equals(currentRoom)) {
@@ -348,11 +363,29 @@ public class ChatController {
     }
 
     /**
-     * 请求房间列表
+     * 请求当前房间更早的一页历史消息
+     */
+    private void requestOlderHistory() {
+        long cursor = clientState.getHistoryCursor();
+        if (currentRoom == null || cursor <= 0) {
+            return;
+        }
+        try {
+            loadHistoryButton.setDisable(true); // 收到响应后根据新的游标恢复
+            messageHandler.sendMessage(Message.createRoomHistoryRequest(
+                    clientState.getUsername(), currentRoom, cursor, HISTORY_PAGE_SIZE));
+        } catch (Exception e) {
+            log.error("加载历史消息失败", e);
+            showErrorAlert("加载历史消息失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 请求聊天室目录快照，之后由房间变更通知中的增量在本地更新
      */
-    private void requestRoomList() {
+    private void requestRoomDirectory() {
         try {
-            Message request = Message.createListRoomsRequest(clientState.getUsername());
+            Message request = Message.createRoomDirectoryRequest(clientState.getUsername());
             messageHandler.sendMessage(request);
         } catch (Exception e) {
             log.error("请求房间列表失败", e);
@@ -366,7 +399,7 @@ public class ChatController {
         messageReceiver = new Thread(() -> {
             try {
                 while (running && clientState.isRunning()) {
-                    Message message = (Message) clientState.getInput().readObject();
+                    Message message = clientState.getStream().readMessage();
                     Platform.runLater(() -> handleMessage(message));
                 }
             } catch (Exception e) {
@@ -397,9 +430,13 @@ public class ChatController {
                 // 房间创建成功的提示只在当前客户端显示
                 showInfoAlert(message.getContent());
                 break;
+            case ROOM_DIRECTORY_SNAPSHOT:
+                handleRoomDirectorySnapshot(message);
+                break;
             case ROOM_CREATED_NOTIFICATION:
             case ROOM_DESTROYED_NOTIFICATION:
-                requestRoomList();
+            case ROOM_UPDATED_NOTIFICATION:
+                handleRoomDirectoryDelta(message);
                 break;
             case CREATE_ROOM_FAILURE:
                 showErrorAlert("创建房间失败: " + message.getContent());
@@ -419,12 +456,18 @@ public class ChatController {
             case ROOM_HISTORY_RESPONSE:
                 handleRoomHistoryResponse(message);
                 break;
+            case ROOM_HISTORY_PAGE_RESPONSE:
+                handleRoomHistoryPageResponse(message);
+                break;
             case CHANGE_ROOM_PASSWORD_SUCCESS:
                 showInfoAlert("密码修改成功");
                 break;
             case CHANGE_ROOM_PASSWORD_FAILURE:
                 showErrorAlert("密码修改失败: " + message.getContent());
                 break;
+            case RATE_LIMITED:
+                showErrorAlert(message.getContent());
+                break;
             default:
                 log.debug("收到未处理的消息类型: {}", message.getType());
                 break;
@@ -445,16 +488,44 @@ public class ChatController {
         });
     }
 
+    /**
+     * 处理聊天室目录快照
+     */
+    private void handleRoomDirectorySnapshot(Message message) {
+        messageHandler.applyRoomSnapshot(message);
+        roomList.setAll(clientState.getRooms().keySet().stream().sorted().toList());
+        roomListView.refresh();
+    }
+
+    /**
+     * 在本地应用聊天室目录增量，只更新变化的那一项；版本号不连续时由 MessageHandler 请求快照
+     */
+    private void handleRoomDirectoryDelta(Message message) {
+        messageHandler.applyRoomDelta(message);
+        if (!(message.getData() instanceof Map<?, ?> delta)) {
+            return;
+        }
+        String room = (String) delta.get("name");
+        if (!clientState.getRooms().containsKey(room)) {
+            roomList.remove(room);
+        } else if (!roomList.contains(room)) {
+            roomList.add(room);
+        }
+        roomListView.refresh(); // 人数或密码标记可能变化
+    }
+
     /**
      * 处理加入房间成功
      */
     private void handleJoinRoomSuccess(Message message) {
         currentRoom = message.getRoomName();
         clientState.setCurrentRoom(Optional.of(currentRoom));
+        clientState.setHistoryCursor(MessageHandler.cursorOf(message.getData()));
 
         Platform.runLater(() -> {
             currentRoomLabel.setText("当前房间: " + currentRoom);
             sendButton.setDisable(false);
+            loadHistoryButton.setDisable(clientState.getHistoryCursor() <= 0);
             roomListView.refresh(); // 刷新房间列表样式
 
             // 清空聊天显示和消息历史
@@ -507,10 +578,12 @@ public class ChatController {
     private void handleLeaveRoomSuccess(Message message) {
         currentRoom = null;
         clientState.setCurrentRoom(Optional.empty());
+        clientState.setHistoryCursor(0);
 
         Platform.runLater(() -> {
             currentRoomLabel.setText("请选择一个聊天室");
             sendButton.setDisable(true);
+            loadHistoryButton.setDisable(true);
             roomListView.refresh(); // 刷新房间列表样式
 
             // 清空聊天显示和消息历史
@@ -541,22 +614,61 @@ public class ChatController {
         }
     }
 
+    /**
+     * 处理分页历史响应：更早的消息插入到当前消息列表的最前面
+     */
+    @SuppressWarnings("unchecked")
+    private void handleRoomHistoryPageResponse(Message message) {
+        if (!message.getRoomName().equals(currentRoom)) {
+            return;
+        }
+        Map<String, Object> page = (Map<String, Object>) message.getData();
+        List<Message> history = (List<Message>) page.get("messages");
+        clientState.setHistoryCursor(MessageHandler.cursorOf(page.get("before")));
+        loadHistoryButton.setDisable(clientState.getHistoryCursor() <= 0);
+
+        List<ChatMessage> chatMessages = new ArrayList<>();
+        for (Message msg : history) {
+            chatMessages.add(new ChatMessage(msg.getSender(), msg.getContent(), msg.getTimestamp(), false));
+        }
+        messageHistory.addAll(0, chatMessages);
+    }
+
     /**
      * 将消息添加到显示区域
+     * 新消息追加在末尾并滚动到底部，更早的历史插入在开头并保持当前位置
      */
     private void setupMessageHistoryListener() {
         messageHistory.addListener((ListChangeListener.Change<? extends ChatMessage> c) -> {
             while (c.next()) {
                 if (c.wasAdded()) {
-                    for (ChatMessage msg : c.getAddedSubList()) {
-                        Platform.runLater(() -> addSingleMessageToDisplay(msg));
-                    }
+                    List<ChatMessage> added = new ArrayList<>(c.getAddedSubList());
+                    boolean prepend = c.getFrom() == 0 && c.getList().size() > added.size();
+                    Platform.runLater(() -> {
+                        if (prepend) {
+                            List<Text> nodes = new ArrayList<>();
+                            added.forEach(msg -> nodes.addAll(createMessageNodes(msg)));
+                            chatDisplay.getChildren().addAll(0, nodes);
+                        } else {
+                            added.forEach(this::addSingleMessageToDisplay);
+                        }
+                    });
                 }
             }
         });
     }
 
     private void addSingleMessageToDisplay(ChatMessage message) {
+        chatDisplay.getChildren().addAll(createMessageNodes(message));
+
+        // 滚动到底部
+        Platform.runLater(() -> chatScrollPane.setVvalue(1.0));
+    }
+
+    /**
+     * 一条消息对应的文本节点：时间、发送者和内容
+     */
+    private List<Text> createMessageNodes(ChatMessage message) {
         Text timeText = new Text("[" + TIME_FORMAT.format(message.timestamp) + "] ");
         timeText.setStyle("-fx-fill: #666; -fx-font-family: '" + FONT_FAMILY + "'; -fx-font-size: 12px;");
 
@@ -572,10 +684,7 @@ public class ChatController {
         Text contentText = new Text(message.content + "\n");
         contentText.setStyle("-fx-fill: black; -fx-font-family: '" + FONT_FAMILY + "'; -fx-font-size: 14px;");
 
-        chatDisplay.getChildren().addAll(timeText, senderText, contentText);
-
-        // 滚动到底部
-        Platform.runLater(() -> chatScrollPane.setVvalue(1.0));
+        return List.of(timeText, senderText, contentText);
     }
 
     /**
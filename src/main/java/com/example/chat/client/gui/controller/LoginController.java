@@ -15,13 +15,14 @@ import javafx.stage.Window;
 import lombok.extern.slf4j.Slf4j;
 
 import com.example.chat.client.ClientState;
+import com.example.chat.client.LoginBackoff;
 import com.example.chat.client.MessageHandler;
+import com.example.chat.common.FramedMessageStream;
 import com.example.chat.common.Message;
 import com.example.chat.common.MessageType;
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.util.List;
 import java.util.Map;
@@ -212,8 +213,7 @@ public class LoginController {
             // Streams are typically closed when the socket is closed.
             // Explicitly closing them can sometimes cause issues if the socket is already closed.
             clientState.setSocket(null);
-            clientState.setInput(null);
-            clientState.setOutput(null);
+            clientState.setStream(null);
         }
     }
 
@@ -223,24 +223,30 @@ public class LoginController {
     private void connectToServer() throws IOException {
         Socket socket = new Socket(clientState.getHost(), clientState.getPort());
         clientState.setSocket(socket);
-        // Ensure output stream is flushed immediately for ObjectInputStream on the other side
-        ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
-        oos.flush();
-        clientState.setOutput(oos);
-        clientState.setInput(new ObjectInputStream(socket.getInputStream()));
+        // 使用帧协议连接，阻塞模式和 NIO 模式的服务器都支持
+        clientState.setStream(FramedMessageStream.connect(socket));
         clientState.setRunning(true);
     }
 
     /**
      * 发送登录请求.
+     * 服务器繁忙（LOGIN_RETRY_AFTER）时按抖动退避重新连接并再次发送
      * @return null on success, error message string on failure.
      */
     private String sendLoginRequest(String username) {
+        LoginBackoff backoff = new LoginBackoff();
         try {
             messageHandler.sendMessage(Message.createLoginRequest(username));
 
             while (clientState.isRunning()) { // Loop should ideally have a timeout or break condition
-                Message response = (Message) clientState.getInput().readObject(); // This blocks
+                Message response = readLoginResponse(); // This blocks
+                if (response == null || response.getType() == MessageType.LOGIN_RETRY_AFTER) {
+                    if (!reconnectAfter(response, backoff)) {
+                        return "服务器繁忙，请稍后再试";
+                    }
+                    messageHandler.sendMessage(Message.createLoginRequest(username));
+                    continue;
+                }
 
                 switch (response.getType()) {
                     case LOGIN_SUCCESS:
@@ -263,7 +269,44 @@ public class LoginController {
         } catch (IOException | ClassNotFoundException e) {
             log.error("登录请求失败", e);
             return "登录请求通信失败: " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "登录过程被中断";
+        }
+    }
+
+    /**
+     * 读取登录响应，服务器在回复前关闭连接（如准入队列已满）时返回 null
+     */
+    private Message readLoginResponse() throws IOException, ClassNotFoundException {
+        try {
+            return clientState.getStream().readMessage();
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 服务器繁忙：关闭当前连接，等待退避时间后重新连接，连接失败时继续退避
+     *
+     * @param response 服务器的 LOGIN_RETRY_AFTER 回复，连接被直接关闭时为 null
+     * @return 重试次数用完时返回 false
+     */
+    private boolean reconnectAfter(Message response, LoginBackoff backoff) throws InterruptedException {
+        closeClientResources();
+        while (backoff.hasNext()) {
+            long delay = backoff.nextDelay(response);
+            log.info("服务器繁忙，{} 毫秒后重新连接", delay);
+            Thread.sleep(delay);
+            try {
+                connectToServer();
+                return true;
+            } catch (IOException e) {
+                closeClientResources();
+                response = null; // 服务器尚未恢复或在握手前关闭了连接
+            }
         }
+        return false;
     }
 
     /**
@@ -1,14 +1,15 @@
 package com.example.chat.client.shell;
 
 import com.example.chat.client.ClientState;
+import com.example.chat.client.LoginBackoff;
 import com.example.chat.client.MessageHandler;
+import com.example.chat.common.FramedMessageStream;
 import com.example.chat.common.Message;
 import com.example.chat.common.MessageType;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.util.Date;
 import java.util.List;
@@ -48,10 +49,12 @@ public class ChatClient {
                 "\n* 按 Ctrl+C 退出程序\n===================\n");
 
         try {
+            // 先输入用户名再连接，连接后立即发出登录请求，不在输入期间占用服务器的登录名额
+            String username = readUsername();
             display.displayInfo(String.format("正在连接到服务器 %s:%d...", state.getHost(), state.getPort()));
 
             initializeConnection()
-                    .flatMap(this::handleLogin)
+                    .flatMap(connected -> handleLogin(username))
                     .ifPresent(success -> {
                         if (success) {
                             startMessageReceiver();
@@ -71,35 +74,48 @@ public class ChatClient {
     private Optional<Boolean> initializeConnection() throws IOException {
         Socket socket = new Socket(state.getHost(), state.getPort());
         state.setSocket(socket);
-        state.setOutput(new ObjectOutputStream(socket.getOutputStream()));
-        state.setInput(new ObjectInputStream(socket.getInputStream()));
+        state.setStream(FramedMessageStream.connect(socket));
         state.setRunning(true);
         display.displayInfo("已成功连接到服务器");
         return Optional.of(true);
     }
 
+    /**
+     * 读取一个格式有效的用户名
+     */
+    private String readUsername() {
+        while (true) {
+            display.displayInfo("请输入您的用户名：");
+            String input = state.getScanner().nextLine().trim();
+            if (validateUsername(input)) {
+                return input;
+            }
+        }
+    }
+
     /**
      * 处理登录
+     * 用户名被占用时重新输入；服务器繁忙时按抖动退避重新连接，并用同一用户名再次登录
      */
-    private Optional<Boolean> handleLogin(boolean connected) {
+    private Optional<Boolean> handleLogin(String username) {
+        LoginBackoff backoff = new LoginBackoff();
+        String input = username;
         try {
             while (true) { // 修改为无限循环，直到成功登录或发生异常
-                display.displayInfo("请输入您的用户名：");
-                String input = state.getScanner().nextLine().trim();
-
-                if (!validateUsername(input)) {
-                    continue;
-                }
-
                 messageHandler.sendMessage(Message.createLoginRequest(input));
 
                 while (state.isRunning()) {
-                    Message response = (Message) state.getInput().readObject();
+                    Message response = readLoginResponse();
+                    if (response == null || response.getType() == MessageType.LOGIN_RETRY_AFTER) {
+                        reconnectAfter(response, backoff);
+                        break; // 重新连接后再次发送登录请求
+                    }
                     if (handleLoginResponse(response, input)) {
                         return Optional.of(true);
                     }
                     if (response.getType() == MessageType.LOGIN_FAILURE_USERNAME_TAKEN) {
-                        break; // 用户名被占用，跳出内层循环重新输入
+                        input = readUsername(); // 用户名被占用，重新输入
+                        break;
                     }
                 }
 
@@ -112,6 +128,45 @@ public class ChatClient {
         return Optional.of(false);
     }
 
+    /**
+     * 读取登录响应，服务器在回复前关闭连接（如准入队列已满）时返回 null
+     */
+    private Message readLoginResponse() throws IOException, ClassNotFoundException {
+        try {
+            return state.getStream().readMessage();
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 服务器繁忙：关闭当前连接，等待退避时间后重新连接，连接失败时继续退避
+     *
+     * @param response 服务器的 LOGIN_RETRY_AFTER 回复，连接被直接关闭时为 null
+     */
+    private void reconnectAfter(Message response, LoginBackoff backoff) throws IOException {
+        state.getSocket().close();
+        while (true) {
+            if (!backoff.hasNext()) {
+                throw new IOException("服务器持续繁忙，已放弃重试");
+            }
+            long delay = backoff.nextDelay(response);
+            display.displayInfo(String.format("服务器繁忙，%.1f 秒后重新连接...", delay / 1000.0));
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("等待重连时被中断");
+            }
+            try {
+                initializeConnection();
+                return;
+            } catch (IOException e) {
+                response = null; // 服务器尚未恢复或在握手前关闭了连接
+            }
+        }
+    }
+
     /**
      * 验证用户名
      */
@@ -139,6 +194,18 @@ public class ChatClient {
 
                 // 显示在线用户列表和可用聊天室
                 Map<String, Object> loginData = (Map<String, Object>) response.getData();
+                if (loginData.get("userCount") instanceof Number users
+                        && loginData.get("roomCount") instanceof Number rooms) {
+                    // 轻量登录：只显示人数，名单和目录在第一次 /list、/rooms 时获取
+                    state.setLiteLogin(true);
+                    display.displayInfo("当前在线 " + users + " 人，共有 " + rooms + " 个聊天室"
+                            + "（输入 /list 查看在线用户，/rooms 查看聊天室）");
+                    return true;
+                }
+                if (loginData.get("presenceVersion") instanceof Number version) {
+                    // 服务器支持在线状态增量：以此快照为起点，之后按版本号应用增量
+                    state.applyPresenceSnapshot(version.longValue(), (List<String>) loginData.get("users"));
+                }
                 Optional.ofNullable(loginData.get("users"))
                         .map(users -> (List<String>) users)
                         .filter(users -> !users.isEmpty())
@@ -178,7 +245,7 @@ public class ChatClient {
         Thread messageReceiver = new Thread(() -> {
             try {
                 while (state.isRunning()) {
-                    Message message = (Message) state.getInput().readObject();
+                    Message message = state.getStream().readMessage();
                     messageHandler.handleMessage(message);
                 }
             } catch (IOException e) {
@@ -15,6 +15,10 @@ import java.util.Arrays;
  * 命令处理器，使用函数式方式处理不同的命令
  */
 public class CommandHandler {
+    private static final int HISTORY_PAGE_SIZE = 30; // /history 默认每页条数
+    private static final int SEARCH_PAGE_SIZE = 20; // /search 每页结果条数
+    private static final int BROWSE_PAGE_SIZE = 20; // /browse 每页房间数
+
     private final ClientState state;
     private final MessageHandler messageHandler;
     private final MessageDisplay display;
@@ -40,6 +44,9 @@ public class CommandHandler {
         commands.put("/leave", this::handleLeaveCommand);
         commands.put("/room-info", this::handleRoomInfoCommand);
         commands.put("/pm", this::handlePmCommand);
+        commands.put("/history", this::handleHistoryCommand);
+        commands.put("/search", this::handleSearchCommand);
+        commands.put("/browse", this::handleBrowseCommand);
     }
 
     /**
@@ -103,7 +110,18 @@ public class CommandHandler {
      * 处理用户列表命令
      */
     private boolean handleListCommand(String[] args, ClientState state) {
+        if (state.getPresenceVersion() >= 0) {
+            // 本地名单由在线状态增量维护，无需向服务器拉取完整列表
+            messageHandler.displayOnlineUsers();
+            return true;
+        }
         try {
+            if (state.isLiteLogin()) {
+                // 轻量登录后第一次查看：取得快照并订阅增量，之后在本地维护名单
+                state.setUserListRequested(true);
+                messageHandler.sendMessage(Message.createPresenceSnapshotRequest(state.getUsername()));
+                return true;
+            }
             messageHandler.sendMessage(Message.createUserListRequest(state.getUsername()));
             return true;
         } catch (IOException e) {
@@ -116,8 +134,15 @@ public class CommandHandler {
      * 处理聊天室列表命令
      */
     private boolean handleRoomsCommand(String[] args, ClientState state) {
+        if (state.getRoomDirectoryVersion() >= 0) {
+            // 本地目录由聊天室变更通知中的增量维护，无需向服务器拉取完整列表
+            messageHandler.displayRooms();
+            return true;
+        }
         try {
-            messageHandler.sendMessage(Message.createListRoomsRequest(state.getUsername()));
+            // 首次使用时取得一次目录快照，之后只应用增量
+            state.setRoomListRequested(true);
+            messageHandler.sendMessage(Message.createRoomDirectoryRequest(state.getUsername()));
             return true;
         } catch (IOException e) {
             display.displayError("获取聊天室列表失败: " + e.getMessage());
@@ -192,6 +217,109 @@ public class CommandHandler {
         return handlePrivateMessage(args);
     }
 
+    /**
+     * 处理历史消息命令：按加入时收到的游标向前加载一页更早的消息
+     */
+    private boolean handleHistoryCommand(String[] args, ClientState state) {
+        int limit = HISTORY_PAGE_SIZE;
+        if (args.length > 1) {
+            try {
+                limit = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                display.displayHint("查看历史消息格式：/history <条数>");
+                return false;
+            }
+        }
+        int pageSize = limit;
+        return state.getCurrentRoom()
+                .map(room -> {
+                    long cursor = state.getHistoryCursor();
+                    if (cursor <= 0) {
+                        display.displayInfo("没有更早的历史消息了");
+                        return false;
+                    }
+                    try {
+                        messageHandler.sendMessage(
+                                Message.createRoomHistoryRequest(state.getUsername(), room, cursor, pageSize));
+                        return true;
+                    } catch (IOException e) {
+                        display.displayError("获取历史消息失败: " + e.getMessage());
+                        return false;
+                    }
+                })
+                .orElseGet(() -> {
+                    display.displayError("您当前不在任何聊天室中");
+                    return false;
+                });
+    }
+
+    /**
+     * 处理搜索命令：带关键词时开始新的搜索，不带参数时继续上一次搜索的下一页
+     */
+    private boolean handleSearchCommand(String[] args, ClientState state) {
+        String query;
+        long cursor;
+        if (args.length > 1) {
+            query = String.join(" ", Arrays.copyOfRange(args, 1, args.length));
+            cursor = 0;
+        } else if (state.getSearchQuery() != null && state.getSearchCursor() > 0) {
+            query = state.getSearchQuery();
+            cursor = state.getSearchCursor();
+        } else {
+            display.displayHint("搜索历史消息格式：/search <关键词>");
+            return false;
+        }
+        return state.getCurrentRoom()
+                .map(room -> {
+                    try {
+                        messageHandler.sendMessage(Message.createRoomSearchRequest(
+                                state.getUsername(), room, query, cursor, SEARCH_PAGE_SIZE));
+                        return true;
+                    } catch (IOException e) {
+                        display.displayError("搜索失败: " + e.getMessage());
+                        return false;
+                    }
+                })
+                .orElseGet(() -> {
+                    display.displayError("您当前不在任何聊天室中");
+                    return false;
+                });
+    }
+
+    /**
+     * 处理聊天室目录命令：/browse <name|members|active> [前缀] 查询第一页，不带参数时查看下一页
+     */
+    private boolean handleBrowseCommand(String[] args, ClientState state) {
+        String sort;
+        String prefix;
+        String cursor;
+        if (args.length > 1) {
+            sort = args[1].toLowerCase();
+            prefix = args.length > 2 ? args[2] : null;
+            cursor = null;
+            if (!sort.equals("name") && !sort.equals("members") && !sort.equals("active")) {
+                display.displayHint("浏览聊天室目录格式：/browse <name|members|active> [名称前缀]");
+                return false;
+            }
+        } else if (state.getBrowseCursor() != null) {
+            sort = state.getBrowseSort();
+            prefix = state.getBrowsePrefix();
+            cursor = state.getBrowseCursor();
+        } else {
+            sort = "members";
+            prefix = null;
+            cursor = null;
+        }
+        try {
+            messageHandler.sendMessage(Message.createRoomDirectoryQuery(
+                    state.getUsername(), prefix, sort, cursor, BROWSE_PAGE_SIZE));
+            return true;
+        } catch (IOException e) {
+            display.displayError("查询聊天室目录失败: " + e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * 处理用户输入
      */
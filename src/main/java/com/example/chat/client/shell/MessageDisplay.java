@@ -59,11 +59,14 @@ public class MessageDisplay {
                 .append("/exit                           - 退出聊天室\n")
                 .append("/list                           - 查看在线用户\n")
                 .append("/rooms                          - 查看可用聊天室\n")
+                .append("/browse <name|members|active> <前缀> - 按名称、人数或最近活跃分页浏览聊天室（不带参数时查看下一页）\n")
                 .append("/create-room room-name <密码>    - 创建新聊天室（密码可选）\n")
                 .append("/join room-name <密码>           - 加入聊天室（密码可选）\n")
                 .append("/passwd room-name <新密码>       - 修改房间密码（仅房主可用，空密码则取消密码）\n")
                 .append("/leave                          - 离开当前聊天室\n")
                 .append("/room-info                      - 显示当前房间信息和成员列表\n")
+                .append("/history <条数>                  - 加载当前房间更早的历史消息（条数可选，默认 30）\n")
+                .append("/search <关键词>                 - 搜索当前房间的历史消息（不带关键词时查看更多结果）\n")
                 .append("/pm <用户名> <消息>               - 发送私聊消息\n")
                 .append("直接输入消息                      - 在当前聊天室发言\n")
                 .append("==================\n");
@@ -165,6 +165,7 @@ public class MessageFormatter {
             // 错误消息
             case ERROR_MESSAGE:
             case LOGIN_FAILURE_USERNAME_TAKEN:
+            case RATE_LIMITED:
                 return String.format("%s[错误] %s%s%s",
                         ANSI_RED, message.getContent(), ANSI_RESET,
                         formatTimestamp(message.getTimestamp()));
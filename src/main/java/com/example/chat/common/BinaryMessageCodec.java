@@ -0,0 +1,416 @@
+package com.example.chat.common;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Message 的紧凑二进制编码
+ *
+ * 消息格式：
+ * <pre>
+ * varint  类型（MessageType 序号）
+ * byte    字段标志位（content/sender/receiver/roomName/data/timestamp 是否存在）
+ * string  content、sender、receiver、roomName（按标志位出现，varint 长度 + UTF-8）
+ * value   data（带类型标签）
+ * long    timestamp（8 字节大端毫秒时间戳）
+ * </pre>
+ * data 的常见形态（字符串、数字、字符串列表、历史消息列表、字符串键的 Map）有专门的标签，集合按列表编码。
+ * 不支持其他类型的 data，也不回退为 Java 序列化：选择紧凑编码的连接不会反序列化对端发来的任意对象。
+ * 列表、Map 和消息的嵌套深度不超过 {@link #MAX_DEPTH}，防止恶意构造的深层嵌套帧在解码时耗尽线程栈
+ */
+public final class BinaryMessageCodec {
+    private static final int HAS_CONTENT = 1;
+    private static final int HAS_SENDER = 1 << 1;
+    private static final int HAS_RECEIVER = 1 << 2;
+    private static final int HAS_ROOM_NAME = 1 << 3;
+    private static final int HAS_DATA = 1 << 4;
+    private static final int HAS_TIMESTAMP = 1 << 5;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_INT = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_BOOLEAN = 4;
+    private static final int TAG_STRING_LIST = 5;
+    private static final int TAG_MESSAGE_LIST = 6;
+    private static final int TAG_LIST = 7;
+    private static final int TAG_MAP = 8;
+    private static final int TAG_MESSAGE = 9;
+    private static final int TAG_DATE = 10;
+
+    static final int MAX_DEPTH = 32; // data 中列表、Map 和消息的最大嵌套深度
+
+    private static final MessageType[] TYPES = MessageType.values();
+
+    private BinaryMessageCodec() {
+    }
+
+    /**
+     * 编码为完整的帧：前 {@link FrameCodec#HEADER_LENGTH} 字节为负载长度
+     */
+    public static byte[] encodeFrame(Message message) throws IOException {
+        Writer writer = new Writer(128);
+        writer.position(FrameCodec.HEADER_LENGTH);
+        writeMessage(writer, message, 0);
+        writer.putIntAt(0, writer.position() - FrameCodec.HEADER_LENGTH);
+        return writer.toByteArray();
+    }
+
+    /**
+     * 从帧负载中解码消息
+     */
+    public static Message decode(byte[] payload, int offset, int length) throws IOException {
+        Reader reader = new Reader(payload, offset, offset + length);
+        Message message = readMessage(reader, 0);
+        if (reader.pos != reader.limit) {
+            throw new IOException("帧中存在多余数据: " + (reader.limit - reader.pos) + " 字节");
+        }
+        return message;
+    }
+
+    private static void writeMessage(Writer writer, Message message, int depth) throws IOException {
+        MessageType type = message.getType();
+        writer.writeVarInt(type == null ? 0 : type.ordinal() + 1);
+
+        int flags = 0;
+        if (message.getContent() != null) {
+            flags |= HAS_CONTENT;
+        }
+        if (message.getSender() != null) {
+            flags |= HAS_SENDER;
+        }
+        if (message.getReceiver() != null) {
+            flags |= HAS_RECEIVER;
+        }
+        if (message.getRoomName() != null) {
+            flags |= HAS_ROOM_NAME;
+        }
+        if (message.getData() != null) {
+            flags |= HAS_DATA;
+        }
+        if (message.getTimestamp() != null) {
+            flags |= HAS_TIMESTAMP;
+        }
+        writer.writeByte(flags);
+
+        if ((flags & HAS_CONTENT) != 0) {
+            writer.writeString(message.getContent());
+        }
+        if ((flags & HAS_SENDER) != 0) {
+            writer.writeString(message.getSender());
+        }
+        if ((flags & HAS_RECEIVER) != 0) {
+            writer.writeString(message.getReceiver());
+        }
+        if ((flags & HAS_ROOM_NAME) != 0) {
+            writer.writeString(message.getRoomName());
+        }
+        if ((flags & HAS_DATA) != 0) {
+            writeValue(writer, message.getData(), depth + 1);
+        }
+        if ((flags & HAS_TIMESTAMP) != 0) {
+            writer.writeLong(message.getTimestamp().getTime());
+        }
+    }
+
+    private static Message readMessage(Reader reader, int depth) throws IOException {
+        int typeId = reader.readVarInt();
+        if (typeId > TYPES.length) {
+            throw new IOException("未知的消息类型序号: " + (typeId - 1));
+        }
+        int flags = reader.readByte();
+
+        Message message = new Message();
+        message.setType(typeId == 0 ? null : TYPES[typeId - 1]);
+        message.setContent((flags & HAS_CONTENT) != 0 ? reader.readString() : null);
+        message.setSender((flags & HAS_SENDER) != 0 ? reader.readString() : null);
+        message.setReceiver((flags & HAS_RECEIVER) != 0 ? reader.readString() : null);
+        message.setRoomName((flags & HAS_ROOM_NAME) != 0 ? reader.readString() : null);
+        message.setData((flags & HAS_DATA) != 0 ? readValue(reader, depth + 1) : null);
+        message.setTimestamp((flags & HAS_TIMESTAMP) != 0 ? new Date(reader.readLong()) : null);
+        return message;
+    }
+
+    private static void checkDepth(int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IOException("data 嵌套深度超过上限 " + MAX_DEPTH);
+        }
+    }
+
+    private static void writeValue(Writer writer, Object value, int depth) throws IOException {
+        checkDepth(depth);
+        if (value == null) {
+            writer.writeByte(TAG_NULL);
+        } else if (value instanceof String s) {
+            writer.writeByte(TAG_STRING);
+            writer.writeString(s);
+        } else if (value instanceof Integer i) {
+            writer.writeByte(TAG_INT);
+            writer.writeVarInt((i << 1) ^ (i >> 31)); // zigzag
+        } else if (value instanceof Long l) {
+            writer.writeByte(TAG_LONG);
+            writer.writeLong(l);
+        } else if (value instanceof Boolean b) {
+            writer.writeByte(TAG_BOOLEAN);
+            writer.writeByte(b ? 1 : 0);
+        } else if (value instanceof Date d) {
+            writer.writeByte(TAG_DATE);
+            writer.writeLong(d.getTime());
+        } else if (value instanceof Message m) {
+            writer.writeByte(TAG_MESSAGE);
+            writeMessage(writer, m, depth);
+        } else if (value instanceof Collection<?> collection) {
+            writeList(writer, collection, depth);
+        } else if (value instanceof Map<?, ?> map && hasStringKeys(map)) {
+            writer.writeByte(TAG_MAP);
+            writer.writeVarInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writer.writeString((String) entry.getKey());
+                writeValue(writer, entry.getValue(), depth + 1);
+            }
+        } else {
+            throw new IOException("紧凑编码不支持的 data 类型: " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * 列表和其他集合（如 Set）都按列表编码，解码为 List
+     */
+    private static void writeList(Writer writer, Collection<?> list, int depth) throws IOException {
+        boolean allStrings = true;
+        boolean allMessages = true;
+        for (Object element : list) {
+            allStrings &= element instanceof String;
+            allMessages &= element instanceof Message;
+        }
+
+        if (allStrings) {
+            writer.writeByte(TAG_STRING_LIST);
+            writer.writeVarInt(list.size());
+            for (Object element : list) {
+                writer.writeString((String) element);
+            }
+        } else if (allMessages) {
+            writer.writeByte(TAG_MESSAGE_LIST);
+            writer.writeVarInt(list.size());
+            for (Object element : list) {
+                writeMessage(writer, (Message) element, depth + 1);
+            }
+        } else {
+            writer.writeByte(TAG_LIST);
+            writer.writeVarInt(list.size());
+            for (Object element : list) {
+                writeValue(writer, element, depth + 1);
+            }
+        }
+    }
+
+    private static boolean hasStringKeys(Map<?, ?> map) {
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object readValue(Reader reader, int depth) throws IOException {
+        checkDepth(depth);
+        int tag = reader.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return reader.readString();
+            case TAG_INT: {
+                int zigzag = reader.readVarInt();
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            case TAG_LONG:
+                return reader.readLong();
+            case TAG_BOOLEAN:
+                return reader.readByte() != 0;
+            case TAG_DATE:
+                return new Date(reader.readLong());
+            case TAG_MESSAGE:
+                return readMessage(reader, depth);
+            case TAG_STRING_LIST: {
+                int size = reader.readLength();
+                List<String> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(reader.readString());
+                }
+                return list;
+            }
+            case TAG_MESSAGE_LIST: {
+                int size = reader.readLength();
+                List<Message> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readMessage(reader, depth + 1));
+                }
+                return list;
+            }
+            case TAG_LIST: {
+                int size = reader.readLength();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(reader, depth + 1));
+                }
+                return list;
+            }
+            case TAG_MAP: {
+                int size = reader.readLength();
+                Map<String, Object> map = new HashMap<>(size * 2);
+                for (int i = 0; i < size; i++) {
+                    String key = reader.readString();
+                    map.put(key, readValue(reader, depth + 1));
+                }
+                return map;
+            }
+            default:
+                throw new IOException("未知的数据标签: " + tag);
+        }
+    }
+
+    /**
+     * 可增长的字节缓冲区，避免 ByteArrayOutputStream 的同步开销
+     */
+    private static final class Writer {
+        private byte[] buf;
+        private int pos;
+
+        Writer(int capacity) {
+            this.buf = new byte[capacity];
+        }
+
+        int position() {
+            return pos;
+        }
+
+        void position(int position) {
+            ensure(position - pos);
+            pos = position;
+        }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+            }
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buf[pos++] = (byte) value;
+        }
+
+        void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            writeBytes(bytes);
+        }
+
+        void putIntAt(int index, int value) {
+            buf[index] = (byte) (value >>> 24);
+            buf[index + 1] = (byte) (value >>> 16);
+            buf[index + 2] = (byte) (value >>> 8);
+            buf[index + 3] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    /**
+     * 带边界检查的读取器
+     */
+    private static final class Reader {
+        private final byte[] buf;
+        private final int limit;
+        private int pos;
+
+        Reader(byte[] buf, int offset, int limit) {
+            this.buf = buf;
+            this.pos = offset;
+            this.limit = limit;
+        }
+
+        void ensure(int n) throws EOFException {
+            if (n < 0 || limit - pos < n) {
+                throw new EOFException("帧数据不完整");
+            }
+        }
+
+        int readByte() throws EOFException {
+            ensure(1);
+            return buf[pos++] & 0xFF;
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("varint 过长");
+        }
+
+        /**
+         * 读取长度字段，并确认剩余数据至少有这么多字节（每个元素至少占 1 字节）
+         */
+        int readLength() throws IOException {
+            int length = readVarInt();
+            ensure(length);
+            return length;
+        }
+
+        long readLong() throws EOFException {
+            ensure(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buf[pos++] & 0xFF);
+            }
+            return value;
+        }
+
+        String readString() throws IOException {
+            int length = readLength();
+            String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+}
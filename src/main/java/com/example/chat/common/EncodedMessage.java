@@ -0,0 +1,35 @@
+package com.example.chat.common;
+
+import java.io.IOException;
+
+/**
+ * 广播用的预编码消息
+ * 每种负载编码只编码一次，得到的帧字节数组在所有接收者之间共享，调用方不得修改
+ */
+public final class EncodedMessage {
+    private final Message message;
+    private final byte[][] frames = new byte[WireCodec.values().length][];
+
+    public EncodedMessage(Message message) {
+        this.message = message;
+    }
+
+    /**
+     * 原始消息，供不支持帧协议的连接（旧版对象流）使用
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * 获取指定编码下的完整帧（包含长度前缀），首次调用时编码并缓存
+     */
+    public synchronized byte[] frame(WireCodec codec) throws IOException {
+        byte[] frame = frames[codec.ordinal()];
+        if (frame == null) {
+            frame = FrameCodec.encode(message, codec);
+            frames[codec.ordinal()] = frame;
+        }
+        return frame;
+    }
+}
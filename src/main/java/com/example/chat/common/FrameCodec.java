@@ -0,0 +1,69 @@
+package com.example.chat.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * 长度前缀帧编解码器
+ * 帧格式：4 字节大端长度 + 负载，负载是单条消息独立的编码结果，
+ * 不依赖连接上之前的任何数据，因此可以在非阻塞 I/O 中按帧切分解码
+ *
+ * 握手：使用帧格式的客户端在连接建立后首先发送 4 字节的 {@link #MAGIC} 和 1 字节的期望编码
+ * （{@link WireCodec} 的 id），服务器回复 1 字节实际采用的编码，之后双方都使用该编码。
+ * 服务器据魔数区分帧协议和旧版对象流协议（对象流以 0xACED 开头）
+ */
+public final class FrameCodec {
+    public static final int MAGIC = 0x57434854; // "WCHT"
+    public static final int HANDSHAKE_LENGTH = 5; // 魔数 + 编码 id
+    public static final int HEADER_LENGTH = 4; // 帧头（长度字段）字节数
+    public static final int MAX_FRAME_LENGTH = 8 * 1024 * 1024; // 单帧负载上限
+
+    private FrameCodec() {
+    }
+
+    /**
+     * 将消息编码为完整的帧（包含长度前缀）
+     */
+    public static byte[] encode(Message message, WireCodec codec) throws IOException {
+        if (codec == WireCodec.BINARY) {
+            return BinaryMessageCodec.encodeFrame(message);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        bytes.write(new byte[HEADER_LENGTH]); // 预留长度字段
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(message);
+        }
+        byte[] frame = bytes.toByteArray();
+        int length = frame.length - HEADER_LENGTH;
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        return frame;
+    }
+
+    /**
+     * 从帧负载中解码消息
+     */
+    public static Message decode(WireCodec codec, byte[] payload, int offset, int length)
+            throws IOException, ClassNotFoundException {
+        if (codec == WireCodec.BINARY) {
+            return BinaryMessageCodec.decode(payload, offset, length);
+        }
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(payload, offset, length))) {
+            return (Message) input.readObject();
+        }
+    }
+
+    /**
+     * 校验帧长度字段
+     */
+    public static void checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("非法的帧长度: " + length);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.chat.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * 基于长度前缀帧的消息流
+ * 阻塞式服务器和 NIO 服务器都支持该格式
+ */
+public class FramedMessageStream implements MessageStream {
+    private final DataInputStream input;
+    private final OutputStream output;
+    private WireCodec codec;
+    private int lastFrameLength; // 最近读取的一帧的字节数（含长度前缀）
+
+    public FramedMessageStream(InputStream in, OutputStream out, WireCodec codec) {
+        this.input = new DataInputStream(new BufferedInputStream(in));
+        this.output = new BufferedOutputStream(out);
+        this.codec = codec;
+    }
+
+    /**
+     * 以客户端身份打开帧消息流
+     * 期望的编码默认为 BINARY，可通过 -Dchat.codec=java 改为 Java 序列化
+     */
+    public static FramedMessageStream connect(Socket socket) throws IOException {
+        WireCodec preferred = WireCodec.valueOf(System.getProperty("chat.codec", WireCodec.BINARY.name()).toUpperCase());
+        return connect(socket, preferred);
+    }
+
+    /**
+     * 以客户端身份打开帧消息流：发送魔数和期望的编码，并采用服务器回复的编码
+     */
+    public static FramedMessageStream connect(Socket socket, WireCodec preferred) throws IOException {
+        FramedMessageStream stream = new FramedMessageStream(socket.getInputStream(), socket.getOutputStream(),
+                preferred);
+        stream.writeInt(FrameCodec.MAGIC);
+        stream.output.write(preferred.getId());
+        stream.output.flush();
+
+        WireCodec accepted = WireCodec.fromId(stream.input.readUnsignedByte());
+        if (accepted == null) {
+            throw new IOException("服务器选择了不支持的编码");
+        }
+        stream.codec = accepted;
+        return stream;
+    }
+
+    /**
+     * 以服务器身份打开帧消息流（魔数已被读取）：读取客户端期望的编码并回复实际采用的编码
+     */
+    public static FramedMessageStream accept(InputStream in, OutputStream out) throws IOException {
+        FramedMessageStream stream = new FramedMessageStream(in, out, WireCodec.JAVA);
+        stream.codec = WireCodec.negotiate(stream.input.readUnsignedByte());
+        stream.output.write(stream.codec.getId());
+        stream.output.flush();
+        return stream;
+    }
+
+    /**
+     * 当前使用的负载编码
+     */
+    public WireCodec getCodec() {
+        return codec;
+    }
+
+    @Override
+    public Message readMessage() throws IOException, ClassNotFoundException {
+        int length = input.readInt();
+        FrameCodec.checkLength(length);
+        byte[] payload = new byte[length];
+        input.readFully(payload);
+        lastFrameLength = FrameCodec.HEADER_LENGTH + length;
+        return FrameCodec.decode(codec, payload, 0, length);
+    }
+
+    /**
+     * 最近一次 {@link #readMessage()} 读取的帧的字节数（含长度前缀）
+     */
+    public int getLastFrameLength() {
+        return lastFrameLength;
+    }
+
+    @Override
+    public void write(Message message) throws IOException {
+        output.write(FrameCodec.encode(message, codec));
+    }
+
+    /**
+     * 写出已编码的完整帧（必须使用当前连接的编码），不刷新
+     */
+    public void writeFrame(byte[] frame) throws IOException {
+        output.write(frame);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            input.close();
+        } finally {
+            output.close();
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        output.write(value >>> 24);
+        output.write(value >>> 16);
+        output.write(value >>> 8);
+        output.write(value);
+    }
+}
@@ -7,6 +7,8 @@ import lombok.NoArgsConstructor;
 
 import java.io.Serializable;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * 消息类，用于客户端和服务器之间的所有通信
@@ -106,11 +108,31 @@ public class Message implements Serializable {
 
     /**
      * 创建一个登录请求消息
+     * data 中声明支持在线状态增量、聊天室目录增量和轻量登录：登录成功消息只包含在线人数和房间数，
+     * 在线用户快照（同时订阅增量）和聊天室目录由客户端按需请求；
+     * 同时声明能够处理 RATE_LIMITED 和 LOGIN_RETRY_AFTER
      */
     public static Message createLoginRequest(String username) {
+        Map<String, Object> capabilities = new HashMap<>();
+        capabilities.put("presence", true);
+        capabilities.put("directory", true);
+        capabilities.put("lite", true);
+        capabilities.put("retry", true);
         return Message.builder()
                 .type(MessageType.LOGIN_REQUEST)
                 .sender(username)
+                .data(capabilities)
+                .timestamp(new Date())
+                .build();
+    }
+
+    /**
+     * 创建一个请求在线用户快照的消息
+     */
+    public static Message createPresenceSnapshotRequest(String username) {
+        return Message.builder()
+                .type(MessageType.PRESENCE_SNAPSHOT_REQUEST)
+                .sender(username)
                 .timestamp(new Date())
                 .build();
     }
@@ -137,6 +159,39 @@ public class Message implements Serializable {
                 .build();
     }
 
+    /**
+     * 创建一个请求聊天室目录快照的消息
+     */
+    public static Message createRoomDirectoryRequest(String username) {
+        return Message.builder()
+                .type(MessageType.ROOM_DIRECTORY_REQUEST)
+                .sender(username)
+                .timestamp(new Date())
+                .build();
+    }
+
+    /**
+     * 创建一个分页查询聊天室目录的消息
+     *
+     * @param prefix 名称前缀，null 表示不过滤
+     * @param sort   排序方式：name、members 或 active
+     * @param cursor 上一页返回的游标，null 表示第一页
+     */
+    public static Message createRoomDirectoryQuery(String username, String prefix, String sort, String cursor,
+            int limit) {
+        Map<String, Object> query = new HashMap<>();
+        query.put("prefix", prefix);
+        query.put("sort", sort);
+        query.put("cursor", cursor);
+        query.put("limit", limit);
+        return Message.builder()
+                .type(MessageType.ROOM_DIRECTORY_QUERY)
+                .sender(username)
+                .data(query)
+                .timestamp(new Date())
+                .build();
+    }
+
     /**
      * 创建一个请求房间信息的消息
      */
@@ -149,6 +204,46 @@ public class Message implements Serializable {
                 .build();
     }
 
+    /**
+     * 创建一个分页历史请求消息
+     *
+     * @param before 只返回序号小于该值的消息，0 表示从最新的消息开始
+     * @param limit  最多返回的消息条数
+     */
+    public static Message createRoomHistoryRequest(String username, String roomName, long before, int limit) {
+        Map<String, Object> page = new HashMap<>();
+        page.put("before", before);
+        page.put("limit", limit);
+        return Message.builder()
+                .type(MessageType.ROOM_HISTORY_PAGE_REQUEST)
+                .sender(username)
+                .roomName(roomName)
+                .data(page)
+                .timestamp(new Date())
+                .build();
+    }
+
+    /**
+     * 创建一个房间历史搜索请求消息
+     *
+     * @param before 只搜索序号小于该值的消息，0 表示从最新的消息开始
+     * @param limit  最多返回的结果条数
+     */
+    public static Message createRoomSearchRequest(String username, String roomName, String query, long before,
+            int limit) {
+        Map<String, Object> search = new HashMap<>();
+        search.put("query", query);
+        search.put("before", before);
+        search.put("limit", limit);
+        return Message.builder()
+                .type(MessageType.ROOM_SEARCH_REQUEST)
+                .sender(username)
+                .roomName(roomName)
+                .data(search)
+                .timestamp(new Date())
+                .build();
+    }
+
     /**
      * 创建一个修改房间密码的请求消息
      */
@@ -0,0 +1,34 @@
+package com.example.chat.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 消息流接口，屏蔽底层的线路格式（对象流或长度前缀帧）
+ * 客户端和服务器的阻塞式连接都通过它收发 Message
+ */
+public interface MessageStream extends Closeable {
+
+    /**
+     * 阻塞读取下一条消息
+     */
+    Message readMessage() throws IOException, ClassNotFoundException;
+
+    /**
+     * 写出一条消息到缓冲区，不刷新
+     */
+    void write(Message message) throws IOException;
+
+    /**
+     * 将缓冲区中的数据刷新到底层连接
+     */
+    void flush() throws IOException;
+
+    /**
+     * 写出一条消息并立即刷新
+     */
+    default void writeMessage(Message message) throws IOException {
+        write(message);
+        flush();
+    }
+}
@@ -2,6 +2,7 @@ package com.example.chat.common;
 
 /**
  * 定义所有可能的消息类型
+ * 二进制编码按序号传输类型，新增类型只能追加在末尾，不能调整已有常量的顺序
  */
 public enum MessageType {
     // 登录相关
@@ -64,5 +65,33 @@ public enum MessageType {
     // 本地消息类型（客户端内部使用）
     LOCAL_ERROR, // 本地错误提示（红色）
     LOCAL_HINT, // 本地操作提示（青色）
-    LOCAL_INFO // 本地普通提示（蓝色）
+    LOCAL_INFO, // 本地普通提示（蓝色）
+
+    // 分页历史（加入房间时只推送最近一页，更早的消息由客户端按需请求）
+    ROOM_HISTORY_PAGE_REQUEST, // C->S: 客户端请求更早的房间历史，data={before: 序号游标, limit: 条数}
+    ROOM_HISTORY_PAGE_RESPONSE, // S->C: 服务器返回一页历史，data={messages: 消息列表, before: 下一页游标，0 表示没有更早的消息}
+
+    // 历史消息全文检索
+    ROOM_SEARCH_REQUEST, // C->S: 客户端在房间历史中搜索，data={query: 关键词, before: 序号游标, limit: 条数}
+    ROOM_SEARCH_RESPONSE, // S->C: 服务器返回一页搜索结果，data={query, sequences: 命中序号, messages: 命中消息, before: 下一页游标}
+
+    // 在线状态（登录请求 data 中声明 presence=true 的客户端才会收到增量）
+    PRESENCE_SNAPSHOT_REQUEST, // C->S: 客户端请求在线用户快照（版本号不连续时重新同步）
+    PRESENCE_SNAPSHOT, // S->C: 服务器发送在线用户快照，data={version: 版本号, users: 在线用户}
+    PRESENCE_DELTA, // S->C: 服务器按周期广播在线状态增量，data={from: 起始版本, version: 新版本, joined: 上线用户, left: 下线用户}
+
+    // 聊天室目录（ROOM_CREATED/DESTROYED/UPDATED_NOTIFICATION 的 data 携带房间摘要和版本号，客户端在本地更新房间列表）
+    ROOM_DIRECTORY_REQUEST, // C->S: 客户端请求聊天室目录快照（首次使用或版本号不连续时）
+    ROOM_DIRECTORY_SNAPSHOT, // S->C: 服务器发送聊天室目录快照，data={version: 版本号, rooms: [{name, members, password}]}
+    ROOM_UPDATED_NOTIFICATION, // S->C: 服务器通知聊天室属性已变更（如设置或取消密码），data={from, version, name, members, password}
+
+    // 聊天室目录分页查询
+    ROOM_DIRECTORY_QUERY, // C->S: 客户端分页查询聊天室目录，data={prefix: 名称前缀, sort: name/members/active, cursor: 游标, limit: 条数}
+    ROOM_DIRECTORY_PAGE, // S->C: 服务器返回一页房间摘要，data={prefix, sort, rooms: [{name, members, password, creationTime, lastActivity}], cursor: 下一页游标，没有更多时不含此项}
+
+    // 登录准入控制
+    LOGIN_RETRY_AFTER, // S->C: 服务器繁忙，拒绝本次登录并关闭连接，data={retryAfterMillis: 建议的最短重试等待时间}
+
+    // 限流
+    RATE_LIMITED // S->C: 请求超出该类型的速率限制，未被处理，data={requestType: 被拒绝的消息类型, retryAfterMillis: 建议的重试等待时间}
 }
\ No newline at end of file
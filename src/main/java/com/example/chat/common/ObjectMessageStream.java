@@ -0,0 +1,105 @@
+package com.example.chat.common;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * 基于 Java 对象序列化的消息流（旧版线路格式）
+ * 整个连接共享一对 ObjectOutputStream / ObjectInputStream
+ *
+ * ObjectOutputStream 会在句柄表中保留所有写出过的对象，长连接上内存会无限增长。
+ * 因此每写出一定数量的消息或一定字节数后调用 {@link ObjectOutputStream#reset()}，
+ * 对端的 ObjectInputStream 读到重置标记后也会清空自己的句柄表
+ */
+public class ObjectMessageStream implements MessageStream {
+    public static final int DEFAULT_RESET_INTERVAL = 256; // 每写出多少条消息重置一次
+    public static final long DEFAULT_RESET_BYTES = 1024 * 1024; // 自上次重置起写出多少字节后重置
+
+    private final CountingOutputStream counter;
+    private final ObjectOutputStream output;
+    private final ObjectInputStream input;
+    private final int resetInterval;
+    private final long resetBytes;
+
+    private int messagesSinceReset;
+
+    public ObjectMessageStream(InputStream in, OutputStream out) throws IOException {
+        this(in, out, DEFAULT_RESET_INTERVAL, DEFAULT_RESET_BYTES);
+    }
+
+    /**
+     * 先创建输出流并写出流头，再创建输入流，避免双方互相等待流头
+     *
+     * @param resetInterval 每写出多少条消息重置一次句柄表，小于等于 0 表示不按条数重置
+     * @param resetBytes    自上次重置起写出多少字节后重置句柄表，小于等于 0 表示不按大小重置
+     */
+    public ObjectMessageStream(InputStream in, OutputStream out, int resetInterval, long resetBytes)
+            throws IOException {
+        this.counter = new CountingOutputStream(new BufferedOutputStream(out));
+        this.output = new ObjectOutputStream(counter);
+        this.output.flush();
+        this.input = new ObjectInputStream(in);
+        this.resetInterval = resetInterval;
+        this.resetBytes = resetBytes;
+        this.counter.count = 0;
+    }
+
+    @Override
+    public Message readMessage() throws IOException, ClassNotFoundException {
+        return (Message) input.readObject();
+    }
+
+    @Override
+    public void write(Message message) throws IOException {
+        output.writeObject(message);
+        messagesSinceReset++;
+        if ((resetInterval > 0 && messagesSinceReset >= resetInterval)
+                || (resetBytes > 0 && counter.count >= resetBytes)) {
+            output.reset();
+            messagesSinceReset = 0;
+            counter.count = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            input.close();
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * 统计写出字节数的输出流
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
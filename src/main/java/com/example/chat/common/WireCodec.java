@@ -0,0 +1,39 @@
+package com.example.chat.common;
+
+/**
+ * 帧负载的编码方式，在帧协议握手时协商
+ */
+public enum WireCodec {
+    JAVA(0), // 每帧独立的 Java 对象序列化
+    BINARY(1); // 手写的紧凑二进制编码，见 BinaryMessageCodec
+
+    private final int id;
+
+    WireCodec(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * 根据握手字节查找编码方式，不认识的编码返回 null
+     */
+    public static WireCodec fromId(int id) {
+        for (WireCodec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 服务器根据客户端请求选择编码方式，不支持时回退到 JAVA
+     */
+    public static WireCodec negotiate(int requestedId) {
+        WireCodec codec = fromId(requestedId);
+        return codec != null ? codec : JAVA;
+    }
+}
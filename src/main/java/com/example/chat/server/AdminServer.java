@@ -0,0 +1,257 @@
+package com.example.chat.server;
+
+import com.example.chat.common.MessageType;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * 管理接口：内嵌的 HTTP 服务（JDK 自带的 {@link HttpServer}），与聊天端口分开监听
+ * <ul>
+ *     <li>GET /metrics：Prometheus 文本格式的 {@link ServerMetrics}</li>
+ *     <li>GET /rooms：聊天室及成员数（JSON）</li>
+ *     <li>GET /connections：在线连接及其发送积压和收发字节数（JSON）</li>
+ * </ul>
+ * 所有数据都读自计数器、volatile 字段和并发集合的弱一致遍历，不获取聊天路径使用的锁，
+ * 请求在单独的一个线程中处理，频繁抓取不影响消息延迟
+ */
+@Slf4j
+class AdminServer implements AutoCloseable {
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 1.0 }; // 1.0 即最大值
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final ServerState serverState;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    AdminServer(ServerState serverState, String host, int port) throws IOException {
+        this.serverState = serverState;
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "admin-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/metrics", exchange -> respond(exchange, PROMETHEUS_CONTENT_TYPE, this::prometheus));
+        server.createContext("/rooms", exchange -> respond(exchange, JSON_CONTENT_TYPE, () -> json(rooms())));
+        server.createContext("/connections",
+                exchange -> respond(exchange, JSON_CONTENT_TYPE, () -> json(connections())));
+    }
+
+    void start() {
+        server.start();
+        log.info("管理接口已启动: http://{}:{}/metrics", server.getAddress().getHostString(), getPort());
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, Supplier<String> body) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            // 只匹配完整路径，/metrics/xxx 之类的请求返回 404
+            if (!exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath())) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] bytes = body.get().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (RuntimeException e) {
+            log.error("管理接口处理请求失败: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Prometheus 文本格式：请求耗时和扇出等直方图导出为 summary，注册的读数导出为 gauge
+     */
+    private String prometheus() {
+        ServerMetrics metrics = serverState.getMetrics();
+        StringBuilder out = new StringBuilder(8192);
+
+        out.append("# HELP chat_requests_total 已处理的请求数\n# TYPE chat_requests_total counter\n");
+        for (MessageType type : MessageType.values()) {
+            long count = metrics.getRequests(type);
+            if (count > 0) {
+                out.append("chat_requests_total{type=\"").append(type.name()).append("\"} ").append(count).append('\n');
+            }
+        }
+        out.append("# HELP chat_request_latency_seconds 请求处理耗时\n# TYPE chat_request_latency_seconds summary\n");
+        for (MessageType type : MessageType.values()) {
+            if (metrics.getRequests(type) > 0) {
+                summary(out, "chat_request_latency_seconds", "type=\"" + type.name() + "\"",
+                        metrics.getLatency(type), NANOS_PER_SECOND);
+            }
+        }
+        out.append("# HELP chat_room_fanout 每次房间广播的接收人数\n# TYPE chat_room_fanout summary\n");
+        summary(out, "chat_room_fanout", null, metrics.getRoomFanOut(), 1);
+        out.append("# HELP chat_outbound_depth 消息入队后该连接的积压消息数\n# TYPE chat_outbound_depth summary\n");
+        summary(out, "chat_outbound_depth", null, metrics.getOutboundDepth(), 1);
+
+        sample(out, "chat_outbound_queued", "gauge", metrics.getOutboundQueued());
+        sample(out, "chat_bytes_in_total", "counter", metrics.getBytesIn());
+        sample(out, "chat_bytes_out_total", "counter", metrics.getBytesOut());
+        metrics.getGauges().forEach((name, value) -> sample(out, "chat_" + snakeCase(name), "gauge", value.getAsLong()));
+        return out.toString();
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, Histogram histogram, double unit) {
+        String prefix = labels == null ? "" : labels + ",";
+        for (double quantile : QUANTILES) {
+            out.append(name).append('{').append(prefix).append("quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getPercentile(quantile * 100) / unit).append('\n');
+        }
+        String suffix = labels == null ? " " : "{" + labels + "} ";
+        out.append(name).append("_sum").append(suffix).append(histogram.getSum() / unit).append('\n');
+        out.append(name).append("_count").append(suffix).append(histogram.getCount()).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String type, long value) {
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * 读数名转为 Prometheus 风格：outbound.slowConsumerDisconnects -> outbound_slow_consumer_disconnects
+     */
+    private static String snakeCase(String name) {
+        StringBuilder builder = new StringBuilder(name.length() + 8);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                builder.append('_').append(Character.toLowerCase(c));
+            } else {
+                builder.append(Character.isLetterOrDigit(c) ? c : '_');
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 聊天室列表：成员数、密码和活跃时间都是 volatile 或原子字段，不获取房间锁
+     */
+    private List<Map<String, Object>> rooms() {
+        List<Map<String, Object>> rooms = new ArrayList<>();
+        for (ChatRoom room : serverState.getChatRooms().values()) {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("name", room.getName());
+            summary.put("creator", room.getCreator());
+            summary.put("members", room.getMemberCount());
+            summary.put("password", room.hasPassword());
+            summary.put("creationTime", room.getCreationTime());
+            summary.put("lastActivity", room.getLastActivityTime());
+            rooms.add(summary);
+        }
+        return rooms;
+    }
+
+    /**
+     * 在线连接列表：积压量读自发送队列的 volatile 字段，不获取队列锁
+     */
+    private List<Map<String, Object>> connections() {
+        List<Map<String, Object>> connections = new ArrayList<>();
+        serverState.getOnlineUsers().forEach((username, connection) -> {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("username", username);
+            summary.put("transport", connection instanceof NioClientConnection ? "nio" : "blocking");
+            summary.put("queuedMessages", connection.getQueuedMessages());
+            summary.put("queuedBytes", connection.getQueuedBytes());
+            summary.put("bytesIn", connection.getBytesIn());
+            summary.put("bytesOut", connection.getBytesOut());
+            connections.add(summary);
+        });
+        return connections;
+    }
+
+    private static String json(Object value) {
+        StringBuilder out = new StringBuilder(4096);
+        appendJson(out, value);
+        return out.append('\n').toString();
+    }
+
+    private static void appendJson(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof Map<?, ?> map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                appendString(out, String.valueOf(entry.getKey()));
+                out.append(':');
+                appendJson(out, entry.getValue());
+            }
+            out.append('}');
+        } else if (value instanceof Collection<?> collection) {
+            out.append('[');
+            boolean first = true;
+            for (Object element : collection) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                appendJson(out, element);
+            }
+            out.append(']');
+        } else {
+            appendString(out, value.toString());
+        }
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+}
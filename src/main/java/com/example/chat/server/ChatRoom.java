@@ -1,30 +1,45 @@
 package com.example.chat.server;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 
+import java.util.Arrays;
 import java.util.Set;
 import java.util.List;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import com.example.chat.common.Message;
 
 /**
  * 表示一个聊天室
  * 该类负责管理单个聊天室的状态，包括成员列表和基本属性
- * 设计为线程安全的，因为会被多个 ClientHandler 并发访问
+ * 设计为线程安全的，因为会被多个 ClientHandler 并发访问：
+ * SHARED 模式下成员变更、销毁和改密码持有对象锁；ACTOR 模式下这些操作都只在房间邮箱中执行，
+ * 邮箱同一时刻只有一个线程，且前后两次执行之间的交接已经保证可见性，因此不再加锁（见 {@link #guarded}）
  */
 @Getter
 public class ChatRoom {
     private final String name; // 聊天室名称（唯一标识）
     private final String creator; // 创建者用户名
     private final long creationTime; // 创建时间
-    private String password; // 房间密码，如果为null或空字符串表示无密码
+    private volatile long lastActivityTime; // 最近一条消息的时间，没有消息时为创建时间
+    private volatile String password; // 房间密码，如果为null或空字符串表示无密码；修改见 guarded，读取不加锁
     private final Set<String> members; // 当前成员列表（用户名）
     private final AtomicInteger memberCount; // 成员计数器，避免频繁计算size
-    private final List<Message> messageHistory; // 聊天记录
-    private static final int MAX_HISTORY_SIZE = 100; // 最大历史消息数量
+    @Getter(AccessLevel.NONE)
+    private final RoomMailbox mailbox; // ACTOR 模式下的房间邮箱，SHARED 模式下为 null
+    @Getter(AccessLevel.NONE)
+    private boolean destroyed; // 房间已销毁，不再接受新成员（SHARED 模式由对象锁保护，ACTOR 模式只在邮箱中访问）
+    @Getter(AccessLevel.NONE)
+    private volatile ClientConnection[] connections = new ClientConnection[0]; // 成员连接的写时复制数组，供广播遍历
+    @Getter(AccessLevel.NONE)
+    private final RoomHistory messageHistory; // 聊天记录（内存环形缓冲区或持久化日志）
+    @Getter(AccessLevel.NONE)
+    private final RoomSearchIndex searchIndex; // 聊天记录的全文检索索引
+    static final int MAX_HISTORY_SIZE = 100; // 内存中保存的最大历史消息数量
 
     /**
      * 创建一个新的聊天室
@@ -33,30 +48,61 @@ public class ChatRoom {
      * @param creator 创建者用户名
      */
     public ChatRoom(String name, String creator, String password) {
+        this(name, creator, password, null);
+    }
+
+    /**
+     * 创建一个新的聊天室
+     *
+     * @param mailboxExecutor 不为 null 时房间操作通过邮箱在该线程池中串行执行（ACTOR 模式）
+     */
+    public ChatRoom(String name, String creator, String password, Executor mailboxExecutor) {
+        this(name, creator, password, mailboxExecutor, new MessageHistory(MAX_HISTORY_SIZE),
+                mailboxExecutor != null ? mailboxExecutor : Runnable::run);
+    }
+
+    /**
+     * 创建一个新的聊天室
+     *
+     * @param mailboxExecutor 不为 null 时房间操作通过邮箱在该线程池中串行执行（ACTOR 模式）
+     * @param history         消息历史的存储方式
+     * @param indexExecutor   执行全文检索建索引和查询的线程池
+     */
+    ChatRoom(String name, String creator, String password, Executor mailboxExecutor, RoomHistory history,
+            Executor indexExecutor) {
         this.name = name;
+        this.mailbox = mailboxExecutor != null ? new RoomMailbox(name, mailboxExecutor) : null;
         this.creator = creator;
         this.password = password;
         this.creationTime = System.currentTimeMillis();
+        this.lastActivityTime = creationTime;
         // 使用 ConcurrentHashMap 的 newKeySet 来创建线程安全的 Set
         this.members = ConcurrentHashMap.newKeySet();
         this.memberCount = new AtomicInteger(0);
-        this.messageHistory = Collections.synchronizedList(new ArrayList<>());
+        this.messageHistory = history;
+        this.searchIndex = new RoomSearchIndex(name, history, indexExecutor);
     }
 
     /**
      * 添加成员到聊天室
      * 返回true如果添加成功，false如果用户已在房间中
+     * 加入和离开远少于发消息，因此每次变更都复制一份连接数组，广播时无需复制或查找
      */
-    public boolean addMember(String username) {
-        if (username == null || username.isEmpty()) {
+    public boolean addMember(String username, ClientConnection connection) {
+        if (username == null || username.isEmpty() || connection == null) {
             return false;
         }
-
-        if (members.add(username)) {
+        return guarded(() -> {
+            if (destroyed || !members.add(username)) {
+                return false;
+            }
             memberCount.incrementAndGet();
+            ClientConnection[] current = connections;
+            ClientConnection[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = connection;
+            connections = updated;
             return true;
-        }
-        return false;
+        });
     }
 
     /**
@@ -67,12 +113,87 @@ public class ChatRoom {
         if (username == null || username.isEmpty()) {
             return false;
         }
-
-        if (members.remove(username)) {
+        return guarded(() -> {
+            if (!members.remove(username)) {
+                return false;
+            }
             memberCount.decrementAndGet();
+            connections = Arrays.stream(connections)
+                    .filter(connection -> !username.equals(connection.getUsername()))
+                    .toArray(ClientConnection[]::new);
             return true;
+        });
+    }
+
+    /**
+     * 房间为空时将其标记为已销毁，之后的加入都会失败
+     * 与 addMember 串行执行（同一把锁或同一个邮箱），避免销毁的同时有用户加入
+     *
+     * @return true 如果房间为空并已标记为销毁
+     */
+    public boolean destroyIfEmpty() {
+        return guarded(() -> {
+            if (memberCount.get() == 0) {
+                destroyed = true;
+            }
+            return destroyed;
+        });
+    }
+
+    /**
+     * 房间是否已销毁
+     */
+    public boolean isDestroyed() {
+        return guarded(() -> destroyed);
+    }
+
+    /**
+     * 执行读写成员、销毁标记或密码的操作
+     * SHARED 模式下多个处理线程并发调用，持有对象锁；ACTOR 模式下调用方都在房间邮箱中
+     * （加入、离开、销毁、改密码和目录通知都经 ServerMessageProcessor.inRoom 投递），直接执行。
+     * {@link RoomIndex} 仍使用对象锁协调同一房间的索引更新，与这里无关
+     */
+    private boolean guarded(BooleanSupplier operation) {
+        if (mailbox != null) {
+            return operation.getAsBoolean();
+        }
+        synchronized (this) {
+            return operation.getAsBoolean();
+        }
+    }
+
+    /**
+     * 房间邮箱，SHARED 模式下为 null
+     */
+    RoomMailbox mailbox() {
+        return mailbox;
+    }
+
+    /**
+     * 消息历史的存储，房间销毁时用于释放持久化日志
+     */
+    RoomHistory history() {
+        return messageHistory;
+    }
+
+    /**
+     * 获取成员连接数组，用于广播
+     * 返回的是内部数组本身（每次变更都会替换为新数组），调用方只能遍历，不能修改
+     */
+    ClientConnection[] connections() {
+        return connections;
+    }
+
+    /**
+     * 获取成员在本房间登记的连接，不是成员时返回 null
+     */
+    ClientConnection getConnection(String username) {
+        for (ClientConnection connection : connections) {
+            if (connection.getUsername().equals(username)) {
+                return connection;
+            }
         }
-        return false;
+        return null;
     }
 
     /**
@@ -108,11 +229,19 @@ public class ChatRoom {
      * 验证密码是否正确
      * 如果房间没有密码（password为null或空字符串），则始终返回true
      */
-    public synchronized boolean validatePassword(String inputPassword) {
-        if (password == null || password.isEmpty()) {
+    public boolean validatePassword(String inputPassword) {
+        String current = password; // volatile 读一次，不需要加锁
+        if (current == null || current.isEmpty()) {
             return true;
         }
-        return password.equals(inputPassword);
+        return current.equals(inputPassword);
+    }
+
+    /**
+     * 房间是否设置了密码
+     */
+    public boolean hasPassword() {
+        return password != null && !password.isEmpty();
     }
 
     /**
@@ -123,15 +252,17 @@ public class ChatRoom {
      * @param newPassword 新密码
      * @return true 如果修改成功，false 如果用户不是房主
      */
-    public synchronized boolean changePassword(String username, String newPassword) {
+    public boolean changePassword(String username, String newPassword) {
         if (!isCreator(username)) {
             return false;
         }
         if (newPassword != null && !newPassword.matches("^[a-zA-Z0-9_]*$")) {
             return false;
         }
-        this.password = newPassword;
-        return true;
+        return guarded(() -> {
+            password = newPassword;
+            return true;
+        });
     }
 
     /**
@@ -143,13 +274,31 @@ public class ChatRoom {
 
     /**
      * 添加一条消息到历史记录
-     * 如果历史记录超过最大容量，将移除最旧的消息
+     * 内存历史超过最大容量时最旧的消息会被覆盖，持久化日志按段保留策略淘汰
+     *
+     * @return 消息在本房间内的序号
      */
-    public synchronized void addMessage(Message message) {
-        if (messageHistory.size() >= MAX_HISTORY_SIZE) {
-            messageHistory.remove(0); // 移除最旧的消息
+    public long addMessage(Message message) {
+        lastActivityTime = System.currentTimeMillis();
+        return messageHistory.append(message);
+    }
+
+    /**
+     * 为已保存的消息建立全文检索索引（异步执行，不阻塞调用方）
+     */
+    public void indexMessage(long sequence, Message message) {
+        if (sequence > 0) {
+            searchIndex.index(sequence, message.getContent());
         }
-        messageHistory.add(message);
+    }
+
+    /**
+     * 异步全文检索历史消息，结果在索引的执行线程中回调
+     *
+     * @param before 只返回序号小于该值的消息，0 表示从最新的消息开始
+     */
+    void searchMessages(String query, long before, int limit, Consumer<RoomSearchIndex.SearchResult> callback) {
+        searchIndex.search(query, before, limit, callback);
     }
 
     /**
@@ -157,9 +306,21 @@ public class ChatRoom {
      * 如果n大于历史记录数量，则返回所有历史记录
      */
     public List<Message> getRecentMessages(int n) {
-        synchronized (messageHistory) {
-            int start = Math.max(0, messageHistory.size() - n);
-            return new ArrayList<>(messageHistory.subList(start, messageHistory.size()));
-        }
+        return messageHistory.recent(n);
+    }
+
+    /**
+     * 获取序号小于 before 的最近 limit 条消息，用于分页加载更早的历史
+     * 只读取所需的那一段，不复制整个历史
+     */
+    public List<Message> getMessagesBefore(long before, int limit) {
+        return messageHistory.before(before, limit);
+    }
+
+    /**
+     * 获取最近一条消息的序号，没有消息时为 0
+     */
+    public long getLastSequence() {
+        return messageHistory.lastSequence();
     }
-}
\ No newline at end of file
+}
@@ -1,13 +1,21 @@
 package com.example.chat.server;
 
+import com.example.chat.common.EncodedMessage;
 import com.example.chat.common.Message;
 import com.example.chat.common.MessageType;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -15,14 +23,63 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 @Slf4j
 public class ChatServer {
-    private static final int DEFAULT_PORT = 8888;
+    private static final int DEFAULT_PORT = ServerConfig.DEFAULT_PORT;
+    private static final int REJECT_THREADS = 2; // 阻塞模式下回复稍后重试的线程数
+    private static final int REJECT_TIMEOUT_MILLIS = 1000; // 回复稍后重试前等待登录请求的最长时间
+    private final ServerConfig config;
     private final ServerState state;
     private final ServerMessageProcessor messageProcessor;
+    private final LoginAdmission loginAdmission;
+    private final ThreadPoolExecutor loginRejector;
     private final AtomicReference<CompletableFuture<Void>> shutdownFuture = new AtomicReference<>();
+    private volatile NioServer nioServer;
+    private volatile VirtualThreadPinningMonitor pinningMonitor;
+    private volatile AdminServer adminServer;
+
+    public ChatServer(ServerConfig config) {
+        this.config = config;
+        this.state = new ServerState(config.getPort(), config.createExecutor(), new LoadShedder(config));
+        this.messageProcessor = new ServerMessageProcessor(state, config.getRoomExecution(),
+                new RateLimiter(config.getRateLimits()));
+        this.loginAdmission = new LoginAdmission(config);
+        this.loginRejector = new ThreadPoolExecutor(REJECT_THREADS, REJECT_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getLoginQueueSize())), runnable -> {
+                    Thread thread = new Thread(runnable, "login-rejector");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        if (config.getDataDir() != null) {
+            this.state.setRoomLogStore(new RoomLogStore(Path.of(config.getDataDir()),
+                    config.getLogSegmentBytes(), config.getLogRetentionSegments()));
+        }
+        registerMetrics();
+    }
+
+    /**
+     * 把发送积压、登录准入、限流和降载的计数注册到指标中
+     */
+    private void registerMetrics() {
+        ServerMetrics metrics = state.getMetrics();
+        OutboundStats outbound = state.getOutboundStats();
+        metrics.gauge("outbound.dropped", outbound::getDroppedMessages);
+        metrics.gauge("outbound.slowConsumerDisconnects", outbound::getSlowConsumerDisconnects);
+        metrics.gauge("outbound.readPauses", outbound::getReadPauses);
+        metrics.gauge("login.active", loginAdmission::getActive);
+        metrics.gauge("login.waiting", loginAdmission::getWaiting);
+        metrics.gauge("login.admitted", loginAdmission::getAdmitted);
+        metrics.gauge("login.rejected", loginAdmission::getRejected);
+        metrics.gauge("login.timedOut", loginAdmission::getTimedOut);
+        metrics.gauge("rateLimit.rejected", messageProcessor.getRateLimiter()::getRejected);
+        LoadShedder shedder = state.getLoadShedder();
+        metrics.gauge("shed.level", () -> shedder.peekLevel().ordinal());
+        metrics.gauge("shed.overloads", shedder::getOverloads);
+        metrics.gauge("shed.requests", shedder::getShedRequests);
+        metrics.gauge("shed.notifications", shedder::getShedNotifications);
+        metrics.gauge("shed.deferredPresenceTicks", shedder::getDeferredPresenceTicks);
+    }
 
     public ChatServer(int port) {
-        this.state = new ServerState(port);
-        this.messageProcessor = new ServerMessageProcessor(state);
+        this(ServerConfig.builder().port(port).build());
     }
 
     public ChatServer() {
@@ -34,37 +91,52 @@ public class ChatServer {
      */
     public void start() {
         try {
-            ServerSocket serverSocket = new ServerSocket(state.getPort());
+            boolean nio = config.getTransport() == ServerConfig.TransportMode.NIO;
+            ServerSocketChannel serverChannel = null;
+            ServerSocket serverSocket;
+            if (nio) {
+                serverChannel = ServerSocketChannel.open();
+                serverChannel.bind(new InetSocketAddress(state.getPort()));
+                serverSocket = serverChannel.socket();
+            } else {
+                serverSocket = new ServerSocket(state.getPort());
+            }
             state.setServerSocket(serverSocket);
             state.setRunning(true);
+            state.getPresence().start(config.getPresenceTickMillis());
 
-            log.info("聊天服务器启动成功，正在监听端口: {}", state.getPort());
+            log.info("聊天服务器启动成功，正在监听端口: {}，传输模式: {}", state.getPort(), config.getTransport());
             log.info("按 Ctrl+C 可以安全关闭服务器");
             System.out.println("\n=== 聊天服务器已启动 ===");
             System.out.println("* 监听端口: " + state.getPort());
+            System.out.println("* 传输模式: " + config.getTransport());
+            System.out.println("* 房间执行模式: " + config.getRoomExecution());
+            System.out.println("* 登录并发上限: " + config.getMaxConcurrentLogins() + "，等待队列: "
+                    + config.getLoginQueueSize());
+            if (config.getDataDir() != null) {
+                System.out.println("* 数据目录: " + config.getDataDir());
+            }
+            if (config.getAdminPort() > 0) {
+                startAdminServer();
+            }
+            if (!nio) {
+                System.out.println("* 线程模式: " + config.getExecutor());
+                if (config.getExecutor() == ServerConfig.ExecutorMode.VIRTUAL && config.isPinningMonitor()) {
+                    pinningMonitor = new VirtualThreadPinningMonitor();
+                    pinningMonitor.start();
+                }
+            }
             System.out.println("* 按 Ctrl+C 关闭服务器");
             System.out.println("=====================\n");
 
             // 创建优雅关闭的Future
             shutdownFuture.set(new CompletableFuture<>());
 
-            while (state.isRunning()) {
-                try {
-                    Socket clientSocket = serverSocket.accept();
-                    if (!state.isRunning()) {
-                        clientSocket.close();
-                        break;
-                    }
-                    System.out.println("新的客户端连接：" + clientSocket.getRemoteSocketAddress());
-
-                    // 为新客户端创建一个处理器并在线程池中执行
-                    ClientHandler clientHandler = new ClientHandler(clientSocket, state, messageProcessor);
-                    state.getExecutorService().execute(clientHandler);
-                } catch (IOException e) {
-                    if (state.isRunning()) {
-                        log.error("接受客户端连接时发生错误: {}", e.getMessage());
-                    }
-                }
+            if (nio) {
+                nioServer = new NioServer(state, messageProcessor, config, loginAdmission);
+                nioServer.serve(serverChannel);
+            } else {
+                acceptBlocking(serverSocket);
             }
         } catch (IOException e) {
             log.error("服务器启动失败: {}", e.getMessage());
@@ -73,6 +145,60 @@ public class ChatServer {
         }
     }
 
+    /**
+     * 阻塞模式：为每个连接创建一个 ClientHandler，取得登录名额后才在线程池中执行
+     * 名额用完时连接在准入队列中等待，不占用线程；队列也满时由少量专用线程回复稍后重试
+     */
+    private void acceptBlocking(ServerSocket serverSocket) {
+        while (state.isRunning()) {
+            try {
+                Socket clientSocket = serverSocket.accept();
+                if (!state.isRunning()) {
+                    clientSocket.close();
+                    break;
+                }
+                System.out.println("新的客户端连接：" + clientSocket.getRemoteSocketAddress());
+
+                // 为新客户端创建一个处理器，取得登录名额后在线程池中执行
+                ClientHandler clientHandler = new ClientHandler(clientSocket, state, messageProcessor, config);
+                if (!loginAdmission.admit(clientHandler, () -> state.getExecutorService().execute(clientHandler))) {
+                    rejectLogin(clientHandler, clientSocket);
+                }
+            } catch (IOException e) {
+                if (state.isRunning()) {
+                    log.error("接受客户端连接时发生错误: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void rejectLogin(ClientHandler clientHandler, Socket clientSocket) {
+        try {
+            loginRejector.execute(() -> clientHandler.rejectLogin(loginAdmission.retryAfter(), REJECT_TIMEOUT_MILLIS));
+        } catch (RejectedExecutionException e) {
+            // 回复队列也已积压，直接关闭，客户端同样会退避后重连
+            try {
+                clientSocket.close();
+            } catch (IOException ignored) {
+                // 忽略关闭套接字时的异常
+            }
+        }
+    }
+
+    /**
+     * 启动管理接口，启动失败只记录错误，不影响聊天服务
+     */
+    private void startAdminServer() {
+        try {
+            adminServer = new AdminServer(state, config.getAdminHost(), config.getAdminPort());
+            adminServer.start();
+            System.out.println("* 管理接口: http://" + config.getAdminHost() + ":" + adminServer.getPort()
+                    + "/metrics");
+        } catch (IOException e) {
+            log.error("管理接口启动失败: {}", e.getMessage());
+        }
+    }
+
     /**
      * 关闭服务器
      */
@@ -87,9 +213,10 @@ public class ChatServer {
 
                 // 通知所有客户端服务器关闭
                 log.info("通知所有客户端服务器即将关闭...");
-                state.getOnlineUsers().values().forEach(handler -> handler.sendMessage(Message.createSystemMessage(
+                EncodedMessage notification = new EncodedMessage(Message.createSystemMessage(
                         MessageType.SERVER_SHUTDOWN_NOTIFICATION,
-                        "服务器即将关闭...")));
+                        "服务器即将关闭..."));
+                state.forEachConnection(handler -> handler.sendEncoded(notification));
 
                 // 等待消息发送完成
                 Thread.sleep(100);
@@ -100,9 +227,30 @@ public class ChatServer {
                     state.getServerSocket().close();
                 }
 
+                // 断开仍在等待登录名额的连接
+                loginAdmission.close();
+                loginRejector.shutdownNow();
+
                 // 关闭服务器状态（这会关闭所有客户端连接和线程池）
                 state.shutdown();
+                if (nioServer != null) {
+                    nioServer.shutdown();
+                }
+                if (pinningMonitor != null) {
+                    pinningMonitor.close();
+                }
+                if (adminServer != null) {
+                    adminServer.close();
+                }
+                if (state.getRoomLogStore() != null) {
+                    state.getRoomLogStore().close();
+                }
 
+                log.info("发送积压统计: {}", state.getOutboundStats());
+                log.info("登录准入统计: {}", loginAdmission);
+                log.info("限流统计: {}", messageProcessor.getRateLimiter());
+                log.info("降载统计: {}", state.getLoadShedder());
+                log.info("指标统计: {}", state.getMetrics());
                 log.info("服务器关闭完成");
                 future.complete(null);
             } catch (Exception e) {
@@ -125,7 +273,7 @@ public class ChatServer {
             }
         }
 
-        ChatServer server = new ChatServer(port);
+        ChatServer server = new ChatServer(ServerConfig.fromSystemProperties(port));
 
         // 添加关闭钩子，确保在Ctrl+C时正确关闭服务器
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -0,0 +1,182 @@
+package com.example.chat.server;
+
+import com.example.chat.common.EncodedMessage;
+import com.example.chat.common.Message;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 服务器端的客户端连接抽象
+ * 阻塞式的 {@link ClientHandler} 和 NIO 的 {@link NioClientConnection} 都继承该类，
+ * 消息处理器只依赖这里定义的操作
+ */
+public abstract class ClientConnection {
+    protected final ServerState serverState;
+    protected final ServerMessageProcessor messageProcessor;
+    protected final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile String username;
+    private volatile boolean presenceSubscribed; // 是否接收在线状态增量（新版客户端登录时声明）
+    private volatile boolean directorySubscribed; // 是否接收旧客户端不认识的目录通知（新版客户端登录时声明）
+    private volatile boolean retrySupported; // 是否认识 RATE_LIMITED（新版客户端登录时声明），否则拒绝回复 ERROR_MESSAGE
+    private final AtomicReference<Runnable> loginSlot = new AtomicReference<>(); // 占用的登录名额，执行即归还
+    private final AtomicLongArray rateBuckets; // 该用户各受限消息类型的令牌桶，见 RateLimiter
+    private final AtomicLong bytesIn = new AtomicLong(); // 读和写各只有一个线程，计数不会争用
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    protected ClientConnection(ServerState serverState, ServerMessageProcessor messageProcessor) {
+        this.serverState = serverState;
+        this.messageProcessor = messageProcessor;
+        this.rateBuckets = messageProcessor.getRateLimiter().newBuckets();
+    }
+
+    /**
+     * 发送消息给客户端
+     */
+    public abstract void sendMessage(Message message);
+
+    /**
+     * 发送预编码的消息，广播时所有接收者共享同一份帧数据
+     * 默认退化为逐个发送原始消息，支持帧协议的连接应直接写出缓存的帧
+     */
+    public void sendEncoded(EncodedMessage message) {
+        sendEncoded(message, false);
+    }
+
+    /**
+     * 发送预编码的消息
+     *
+     * @param droppable 是否为房间广播，发送积压时可按策略丢弃
+     */
+    public void sendEncoded(EncodedMessage message, boolean droppable) {
+        sendMessage(message.getMessage());
+    }
+
+    /**
+     * 释放底层传输资源（流、套接字或通道）
+     */
+    protected abstract void closeTransport();
+
+    /**
+     * 发送队列中积压的消息数
+     */
+    public abstract int getQueuedMessages();
+
+    /**
+     * 发送队列中积压的字节数
+     */
+    public abstract long getQueuedBytes();
+
+    /**
+     * 记录从该连接读取的字节数，同时计入服务器指标
+     */
+    protected void recordBytesIn(long bytes) {
+        bytesIn.addAndGet(bytes);
+        serverState.getMetrics().bytesIn(bytes);
+    }
+
+    /**
+     * 记录向该连接写出的字节数，同时计入服务器指标
+     */
+    protected void recordBytesOut(long bytes) {
+        bytesOut.addAndGet(bytes);
+        serverState.getMetrics().bytesOut(bytes);
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    /**
+     * 关闭客户端连接，只会执行一次
+     * 无论是登出还是连接异常断开，都会让用户离开其所在的所有聊天室。
+     * 清理只针对本连接：用户名已被同名的新登录占用时不移除在线用户，也不让新会话离开房间
+     */
+    public void close() {
+        releaseLoginSlot();
+        if (running.compareAndSet(true, false)) {
+            if (username != null && serverState.removeUser(username, this)) {
+                messageProcessor.processDisconnect(username, this);
+            }
+            closeTransport();
+        }
+    }
+
+    /**
+     * 取得登录名额，release 在第一次登录请求处理完毕或连接关闭时执行
+     */
+    void holdLoginSlot(Runnable release) {
+        loginSlot.set(release);
+    }
+
+    /**
+     * 归还登录名额，只有第一次调用返回 true
+     */
+    boolean releaseLoginSlot() {
+        Runnable release = loginSlot.getAndSet(null);
+        if (release == null) {
+            return false;
+        }
+        release.run();
+        return true;
+    }
+
+    /**
+     * 登录超时或服务器关闭时断开尚未登录的连接，可在任意线程调用
+     */
+    void abortLogin() {
+        if (running.get()) {
+            close();
+        } else {
+            closeTransport();
+        }
+    }
+
+    /**
+     * 获取用户名
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * 登录成功后绑定用户名
+     */
+    void setUsername(String username) {
+        this.username = username;
+    }
+
+    AtomicLongArray getRateBuckets() {
+        return rateBuckets;
+    }
+
+    boolean isPresenceSubscribed() {
+        return presenceSubscribed;
+    }
+
+    void setPresenceSubscribed(boolean presenceSubscribed) {
+        this.presenceSubscribed = presenceSubscribed;
+    }
+
+    boolean isDirectorySubscribed() {
+        return directorySubscribed;
+    }
+
+    void setDirectorySubscribed(boolean directorySubscribed) {
+        this.directorySubscribed = directorySubscribed;
+    }
+
+    boolean isRetrySupported() {
+        return retrySupported;
+    }
+
+    void setRetrySupported(boolean retrySupported) {
+        this.retrySupported = retrySupported;
+    }
+}
@@ -1,39 +1,50 @@
 package com.example.chat.server;
 
+import com.example.chat.common.EncodedMessage;
+import com.example.chat.common.FrameCodec;
+import com.example.chat.common.FramedMessageStream;
 import com.example.chat.common.Message;
-import com.example.chat.common.MessageType;
+import com.example.chat.common.MessageStream;
+import com.example.chat.common.ObjectMessageStream;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * 处理单个客户端连接的处理器
+ * 处理单个客户端连接的处理器（阻塞式，每连接一个线程）
+ * 读取在连接线程中完成；发送只把消息放入发送队列，由写出任务批量写出并只刷新一次，
+ * 发送方不会被慢速的接收方阻塞。发送积压由 {@link OutboundQueue} 按高低水位控制
  */
 @Slf4j
-public class ClientHandler implements Runnable {
+public class ClientHandler extends ClientConnection implements Runnable {
+    private static final long CLOSE_DRAIN_TIMEOUT_MILLIS = 200; // 关闭后留给写出任务写完剩余消息的时间，超时直接关闭套接字
     private final Socket clientSocket;
-    private final ServerState serverState;
-    private final ServerMessageProcessor messageProcessor;
-    private final ReentrantLock sendLock = new ReentrantLock();
+    private final OutboundQueue<EncodedMessage> outbound;
+    private final AtomicBoolean writerScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean socketClosed = new AtomicBoolean(false);
+    private final ReentrantLock writeLock = new ReentrantLock();
 
-    private ObjectInputStream input;
-    private ObjectOutputStream output;
-    private String username;
-    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile MessageStream stream;
 
     public ClientHandler(Socket clientSocket, ServerState serverState, ServerMessageProcessor messageProcessor) {
+        this(clientSocket, serverState, messageProcessor, ServerConfig.builder().build());
+    }
+
+    public ClientHandler(Socket clientSocket, ServerState serverState, ServerMessageProcessor messageProcessor,
+            ServerConfig config) {
+        super(serverState, messageProcessor);
         this.clientSocket = clientSocket;
-        this.serverState = serverState;
-        this.messageProcessor = messageProcessor;
+        this.outbound = new OutboundQueue<>(config, serverState);
     }
 
     @Override
@@ -55,11 +66,19 @@ public class ClientHandler implements Runnable {
 
     /**
      * 初始化输入输出流
+     * 根据客户端发送的前 4 个字节识别线路格式：帧协议魔数（随后协商负载编码）或对象流流头
      */
     private boolean initializeStreams() {
         try {
-            output = new ObjectOutputStream(clientSocket.getOutputStream());
-            input = new ObjectInputStream(clientSocket.getInputStream());
+            PushbackInputStream in = new PushbackInputStream(clientSocket.getInputStream(), 4);
+            byte[] head = readHead(in);
+            int magic = ((head[0] & 0xFF) << 24) | ((head[1] & 0xFF) << 16) | ((head[2] & 0xFF) << 8) | (head[3] & 0xFF);
+            if (magic == FrameCodec.MAGIC) {
+                stream = FramedMessageStream.accept(in, clientSocket.getOutputStream());
+            } else {
+                in.unread(head);
+                stream = new ObjectMessageStream(in, clientSocket.getOutputStream());
+            }
             running.set(true);
             return true;
         } catch (IOException e) {
@@ -68,63 +87,73 @@ public class ClientHandler implements Runnable {
         }
     }
 
+    private static byte[] readHead(InputStream in) throws IOException {
+        byte[] head = new byte[4];
+        int read = 0;
+        while (read < head.length) {
+            int n = in.read(head, read, head.length - read);
+            if (n < 0) {
+                throw new EOFException("连接在协议握手前关闭");
+            }
+            read += n;
+        }
+        return head;
+    }
+
     /**
      * 处理客户端登录
      */
     private boolean handleLogin() throws IOException, ClassNotFoundException {
         while (running.get()) {
-            Message loginMessage = (Message) input.readObject();
-
-            if (loginMessage.getType() != MessageType.LOGIN_REQUEST) {
-                sendMessage(Message.createSystemMessage(
-                        MessageType.ERROR_MESSAGE,
-                        "请先登录!"));
-                continue;
-            }
-
-            String requestedUsername = loginMessage.getSender();
-
-            if (!isValidName(requestedUsername)) {
-                sendMessage(Message.createSystemMessage(
-                        MessageType.ERROR_MESSAGE,
-                        "用户名只能包含大小写字母、数字和下划线"));
-                continue;
-            }
-
-            if (serverState.addUser(requestedUsername, this)) {
-                username = requestedUsername;
-
-                // 发送登录成功消息，包含当前在线用户列表和可用聊天室列表
-                Map<String, Object> loginData = new HashMap<>();
-                loginData.put("users", serverState.getOnlineUserList());
-                loginData.put("rooms", serverState.getChatRoomList());
-
-                sendMessage(Message.builder()
-                        .type(MessageType.LOGIN_SUCCESS)
-                        .content("登录成功！")
-                        .data(loginData)
-                        .sender("SERVER")
-                        .build());
-
+            Message loginMessage = stream.readMessage();
+            boolean loggedIn = messageProcessor.processLogin(loginMessage, this);
+            // 第一次登录请求处理完毕即归还登录名额，之后的重试（如换用户名）不再占用名额
+            releaseLoginSlot();
+            if (loggedIn) {
                 return true;
-            } else {
-                sendMessage(Message.createSystemMessage(
-                        MessageType.LOGIN_FAILURE_USERNAME_TAKEN,
-                        "用户名 '" + requestedUsername + "' 已被占用，请选择其他用户名"));
             }
         }
         return false;
     }
 
+    /**
+     * 登录名额和等待队列都已满：完成握手并读取登录请求后直接回复稍后重试，然后关闭连接
+     * 在专用的少量线程中执行，读取超时很短，不会为被拒绝的连接创建新线程
+     */
+    void rejectLogin(Message retryAfter, int timeoutMillis) {
+        try {
+            clientSocket.setSoTimeout(timeoutMillis);
+            if (initializeStreams()) {
+                // 先读走登录请求，关闭时接收缓冲区中没有未读数据，避免连接被重置
+                Message login = stream.readMessage();
+                stream.write(ServerMessageProcessor.retryReply(retryAfter,
+                        ServerMessageProcessor.hasCapability(login, "retry")));
+                stream.flush();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            log.debug("回复稍后重试失败: {}", e.getMessage());
+        } finally {
+            running.set(false);
+            closeTransport();
+        }
+    }
+
     /**
      * 处理消息循环
      */
     private void processMessages() {
         try {
             while (running.get()) {
-                Message message = (Message) input.readObject();
+                // PAUSE_READS 策略下发送积压过高时暂停读取，直到回落到低水位
+                outbound.awaitRelieved();
+                Message message = stream.readMessage();
+                if (stream instanceof FramedMessageStream framed) {
+                    recordBytesIn(framed.getLastFrameLength());
+                }
                 messageProcessor.processMessage(message, this);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (EOFException | SocketException e) {
             if (running.get()) {
                 // 客户端正常断开连接，不需要记录错误
@@ -143,80 +172,168 @@ public class ClientHandler implements Runnable {
 
     /**
      * 发送消息给客户端
-     * 使用ReentrantLock确保消息发送的原子性和顺序性
+     * 只负责入队，可在任意线程调用
      */
+    @Override
     public void sendMessage(Message message) {
-        sendLock.lock();
+        sendEncoded(new EncodedMessage(message));
+    }
+
+    /**
+     * 发送预编码的消息
+     * 只负责入队；积压超出限制时按慢速消费者策略断开连接
+     */
+    @Override
+    public void sendEncoded(EncodedMessage message, boolean droppable) {
+        MessageStream out = stream;
+        if (!running.get() || out == null) {
+            return;
+        }
+        int size;
         try {
-            if (running.get() && output != null) {
-                output.writeObject(message);
-                output.flush();
-            }
+            // 帧协议连接在入队时取得帧数据以统计字节数，旧版对象流只按消息数统计
+            size = out instanceof FramedMessageStream framed ? message.frame(framed.getCodec()).length : 0;
         } catch (IOException e) {
-            if (running.get() && e.getMessage() != null) {
-                log.error("发送消息失败: {}", e.getMessage());
-            }
+            log.error("编码消息失败: {}", e.getMessage());
+            return;
+        }
+        if (!outbound.offer(message, size, droppable, message.getMessage().getType())) {
+            log.warn("客户端 {} 发送积压超出限制，断开连接（{}）", getUsername(), serverState.getOutboundStats());
+            outbound.close();
             close();
-        } finally {
-            sendLock.unlock();
+            return;
+        }
+        if (writerScheduled.compareAndSet(false, true)) {
+            try {
+                serverState.getExecutorService().execute(this::drainOutbound);
+            } catch (RejectedExecutionException e) {
+                writerScheduled.set(false);
+            }
         }
     }
 
     /**
-     * 关闭客户端连接
+     * 写出任务：取出队列中已有的全部消息依次写入缓冲区，最后只刷新一次
+     * 同一时刻最多只有一个写出任务在运行。连接关闭后不会再有消息入队，
+     * 写出任务把关闭前已入队的消息写完之后负责关闭套接字
      */
-    public void close() {
-        if (running.compareAndSet(true, false)) {
-            if (username != null) {
-                serverState.removeUser(username);
-            }
-
+    private void drainOutbound() {
+        boolean owner = true; // 队列非空却没能取得写出权时，由取得写出权的任务继续写出并关闭
+        do {
             try {
-                if (input != null) {
-                    try {
-                        input.close();
-                    } catch (IOException ignored) {
-                        // 忽略关闭流时的异常
-                    }
-                    input = null;
-                }
-
-                if (output != null) {
-                    try {
-                        output.close();
-                    } catch (IOException ignored) {
-                        // 忽略关闭流时的异常
-                    }
-                    output = null;
+                writeQueued();
+            } catch (IOException e) {
+                if (running.get() && e.getMessage() != null) {
+                    log.error("发送消息失败: {}", e.getMessage());
                 }
+                writerScheduled.set(false);
+                close();
+                closeSocket();
+                return;
+            }
+            writerScheduled.set(false);
+        } while (!outbound.isEmpty() && (owner = writerScheduled.compareAndSet(false, true)));
+        if (owner && !running.get()) {
+            closeSocket();
+        }
+    }
 
-                if (!clientSocket.isClosed()) {
-                    try {
-                        clientSocket.close();
-                    } catch (IOException ignored) {
-                        // 忽略关闭套接字时的异常
-                    }
-                }
-            } catch (Exception e) {
-                if (e.getMessage() != null) {
-                    log.error("关闭客户端连接时发生错误: {}", e.getMessage());
+    private void writeQueued() throws IOException {
+        writeLock.lock();
+        try {
+            MessageStream out = stream;
+            if (out == null) {
+                return;
+            }
+            EncodedMessage message;
+            boolean written = false;
+            while ((message = outbound.poll()) != null) {
+                if (out instanceof FramedMessageStream framed) {
+                    byte[] frame = message.frame(framed.getCodec());
+                    framed.writeFrame(frame);
+                    recordBytesOut(frame.length);
+                } else {
+                    out.write(message.getMessage());
                 }
+                written = true;
+            }
+            if (written) {
+                out.flush();
             }
+        } finally {
+            writeLock.unlock();
         }
     }
 
+    @Override
+    public int getQueuedMessages() {
+        return outbound.getQueuedMessages();
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        return outbound.getQueuedBytes();
+    }
+
     /**
-     * 获取用户名
+     * 关闭连接
+     * 关闭线程自己不写出也不等待：没有待写出的消息时直接关闭套接字；否则把关闭前已入队的消息（如登出确认）
+     * 交给写出任务尽力写出，写完后由它关闭套接字。对端不读取时写出会一直阻塞，
+     * 因此超过 {@link #CLOSE_DRAIN_TIMEOUT_MILLIS} 后无论是否写完都关闭套接字，阻塞的写出随之失败返回
      */
-    public String getUsername() {
-        return username;
+    @Override
+    protected void closeTransport() {
+        if (writeLock.tryLock()) {
+            try {
+                if (stream == null || outbound.isEmpty()) {
+                    closeSocket();
+                    return;
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            if (writerScheduled.compareAndSet(false, true)) {
+                try {
+                    serverState.getExecutorService().execute(this::drainOutbound);
+                } catch (RejectedExecutionException e) {
+                    closeSocket();
+                    return;
+                }
+            }
+        }
+        // 写出任务正在运行或已安排：它结束时会关闭套接字
+        CompletableFuture.delayedExecutor(CLOSE_DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).execute(this::closeSocket);
     }
 
     /**
-     * 验证名称格式（用户名或房间名）
-     * 只允许使用大小写字母、数字和下划线
+     * 清空发送队列并关闭流和套接字，只执行一次
      */
-    private boolean isValidName(String name) {
-        return name != null && name.matches("^[a-zA-Z0-9_]+$");
+    private void closeSocket() {
+        if (!socketClosed.compareAndSet(false, true)) {
+            return;
+        }
+        outbound.close();
+        try {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                    // 忽略关闭流时的异常
+                }
+                stream = null;
+            }
+
+            if (!clientSocket.isClosed()) {
+                try {
+                    clientSocket.close();
+                } catch (IOException ignored) {
+                    // 忽略关闭套接字时的异常
+                }
+            }
+        } catch (Exception e) {
+            if (e.getMessage() != null) {
+                log.error("关闭客户端连接时发生错误: {}", e.getMessage());
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+package com.example.chat.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按版本号顺序扇出增量广播
+ * 调用方在持有版本号锁时 {@link #add} 入队（入队顺序即版本号顺序），释放锁之后再调用 {@link #flush}：
+ * 同一时刻只有一个线程在发送，其他线程入队后直接返回，它们的增量由正在发送的线程按顺序一并发出。
+ * 版本号锁只覆盖递增版本号和编码，O(连接数) 的扇出不再阻塞快照、订阅和其他变更
+ */
+class DeltaFanOut {
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+
+    /**
+     * 追加一次广播，应在分配版本号的同一把锁内调用
+     */
+    void add(Runnable broadcast) {
+        pending.add(broadcast);
+    }
+
+    /**
+     * 发送已入队的广播，应在释放版本号锁之后调用
+     */
+    void flush() {
+        // 释放发送权之后再检查一次，避免其他线程在最后一次 poll 之后入队的增量无人发送
+        while (!pending.isEmpty() && flushing.compareAndSet(false, true)) {
+            try {
+                Runnable broadcast;
+                while ((broadcast = pending.poll()) != null) {
+                    broadcast.run();
+                }
+            } finally {
+                flushing.set(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.chat.server;
+
+import com.example.chat.common.MessageType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于排队时延的自适应降载（参考 CoDel）
+ * 每条消息从进入发送队列到被写出的等待时间（sojourn time）都记录在这里。一个周期（interval）内的最小等待时间
+ * 仍高于目标值，说明队列不是短暂的突发而是持续积压，降载级别升一级；某个周期的最小等待时间回落到目标值以下
+ * （或整个周期没有消息）时降一级。级别越高丢弃的工作越多，房间消息和私聊始终不受影响：
+ * <ol>
+ *     <li>{@link Level#SHED_LISTS}：拒绝用户列表和房间列表类请求</li>
+ *     <li>{@link Level#SHED_PRESENCE}：另外推迟在线状态增量的广播，丢弃加入、离开房间的通知</li>
+ * </ol>
+ * 记录和判断都不加锁，周期的切换由 CAS 保证只有一个线程执行
+ */
+@Slf4j
+public class LoadShedder {
+    /**
+     * 降载级别
+     */
+    public enum Level {
+        NORMAL, // 正常服务
+        SHED_LISTS, // 拒绝列表类请求
+        SHED_PRESENCE // 拒绝列表类请求，并推迟或丢弃在线状态通知
+    }
+
+    // 在线状态快照和房间目录快照不在其中：客户端发现增量版本不连续时靠它们重新同步，
+    // 被拒绝后客户端不会重试，之后的增量都会被忽略
+    private static final Set<MessageType> LIST_REQUESTS = EnumSet.of(
+            MessageType.USER_LIST_REQUEST,
+            MessageType.LIST_ROOMS_REQUEST,
+            MessageType.ROOM_DIRECTORY_QUERY);
+
+    private final long targetNanos;
+    private final long intervalNanos;
+    private final AtomicLong intervalEnd;
+    private final AtomicLong intervalMin = new AtomicLong(Long.MAX_VALUE); // 当前周期内的最小等待时间
+    private volatile Level level = Level.NORMAL;
+
+    private final LongAdder shedRequests = new LongAdder();
+    private final LongAdder shedNotifications = new LongAdder();
+    private final LongAdder deferredPresenceTicks = new LongAdder();
+    private final LongAdder overloads = new LongAdder(); // 从正常进入降载状态的次数
+
+    LoadShedder(ServerConfig config) {
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(config.getShedTargetMillis());
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, config.getShedIntervalMillis()));
+        this.intervalEnd = new AtomicLong(System.nanoTime() + intervalNanos);
+    }
+
+    /**
+     * 记录一条消息出队时的等待时间
+     *
+     * @param enqueuedAt 入队时的 {@link System#nanoTime()}
+     */
+    void record(long enqueuedAt) {
+        long now = System.nanoTime();
+        advance(now);
+        long sojourn = now - enqueuedAt;
+        long min;
+        while (sojourn < (min = intervalMin.get()) && !intervalMin.compareAndSet(min, sojourn)) {
+            // 其他线程同时更新了最小值，重新比较
+        }
+    }
+
+    /**
+     * 周期结束时根据本周期的最小等待时间调整级别
+     */
+    private void advance(long now) {
+        long end = intervalEnd.get();
+        if (now < end || !intervalEnd.compareAndSet(end, now + intervalNanos)) {
+            return;
+        }
+        long min = intervalMin.getAndSet(Long.MAX_VALUE);
+        Level current = level;
+        Level next;
+        if (now - end >= intervalNanos || min == Long.MAX_VALUE) {
+            next = Level.NORMAL; // 超过一个周期没有消息出队，队列已经清空
+        } else if (min > targetNanos) {
+            next = Level.values()[Math.min(current.ordinal() + 1, Level.values().length - 1)];
+        } else {
+            next = Level.values()[Math.max(current.ordinal() - 1, 0)];
+        }
+        if (next == current) {
+            return;
+        }
+        level = next;
+        if (current == Level.NORMAL) {
+            overloads.increment();
+        }
+        if (next.ordinal() > current.ordinal()) {
+            log.warn("发送队列等待时间持续超过 {}ms（周期最小值 {}ms），降载级别升至 {}",
+                    TimeUnit.NANOSECONDS.toMillis(targetNanos), TimeUnit.NANOSECONDS.toMillis(min), next);
+        } else {
+            log.info("发送队列等待时间已回落，降载级别降至 {}", next);
+        }
+    }
+
+    /**
+     * 当前降载级别
+     */
+    public Level getLevel() {
+        advance(System.nanoTime());
+        return level;
+    }
+
+    /**
+     * 当前降载级别的只读视图，不推进周期也不修改任何状态，供指标导出使用
+     * 超过一个完整周期没有消息出队时，下一次判断必然回到 {@link Level#NORMAL}，这里直接按正常报告
+     */
+    public Level peekLevel() {
+        return System.nanoTime() - intervalEnd.get() >= intervalNanos ? Level.NORMAL : level;
+    }
+
+    /**
+     * 是否拒绝这个请求：{@link Level#SHED_LISTS} 及以上级别拒绝列表类请求
+     */
+    boolean shedRequest(MessageType type) {
+        if (type == null || !LIST_REQUESTS.contains(type) || getLevel() == Level.NORMAL) {
+            return false;
+        }
+        shedRequests.increment();
+        return true;
+    }
+
+    /**
+     * 是否丢弃一条加入或离开房间的通知
+     */
+    boolean shedNotification() {
+        if (getLevel() != Level.SHED_PRESENCE) {
+            return false;
+        }
+        shedNotifications.increment();
+        return true;
+    }
+
+    /**
+     * 是否推迟本周期的在线状态增量广播（事件保留到负载回落后合并发出）
+     */
+    boolean deferPresence() {
+        if (getLevel() != Level.SHED_PRESENCE) {
+            return false;
+        }
+        deferredPresenceTicks.increment();
+        return true;
+    }
+
+    /**
+     * 建议被拒绝的客户端等待的时间（一个周期）
+     */
+    long getRetryAfterNanos() {
+        return intervalNanos;
+    }
+
+    /**
+     * 被拒绝的列表类请求数
+     */
+    public long getShedRequests() {
+        return shedRequests.sum();
+    }
+
+    /**
+     * 被丢弃的加入、离开房间通知数
+     */
+    public long getShedNotifications() {
+        return shedNotifications.sum();
+    }
+
+    /**
+     * 被推迟的在线状态广播周期数
+     */
+    public long getDeferredPresenceTicks() {
+        return deferredPresenceTicks.sum();
+    }
+
+    /**
+     * 进入降载状态的次数
+     */
+    public long getOverloads() {
+        return overloads.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "当前级别 " + level + "，进入降载 " + getOverloads() + " 次，拒绝列表请求 " + getShedRequests()
+                + " 个，丢弃房间通知 " + getShedNotifications() + " 条，推迟在线状态广播 " + getDeferredPresenceTicks() + " 次";
+    }
+}
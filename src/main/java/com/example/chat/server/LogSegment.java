@@ -0,0 +1,256 @@
+package com.example.chat.server;
+
+import com.example.chat.common.BinaryMessageCodec;
+import com.example.chat.common.Message;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * 房间日志的一个段
+ * 由两个内存映射文件组成，文件名为段内第一条消息的序号：
+ * <pre>
+ * {base}.log  记录：int 负载长度 + int CRC32C + long 序号 + 负载（BinaryMessageCodec 编码）
+ * {base}.idx  稀疏索引：每写入约 {@link #INDEX_INTERVAL_BYTES} 字节记录一项 long 序号 + int 文件位置
+ * </pre>
+ * 文件预先分配固定大小，未写入的部分全为 0，因此长度为 0 的记录表示段的末尾。
+ * 段只由所属的 {@link RoomLog} 在持有写锁时写入；写入位置在记录写完之后才以 volatile 方式发布，
+ * 读取不加锁，只读取已发布位置之前的记录
+ */
+class LogSegment {
+    static final String LOG_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".idx";
+    static final int RECORD_HEADER_LENGTH = 16;
+    static final int INDEX_INTERVAL_BYTES = 4096;
+    private static final int INDEX_ENTRY_LENGTH = 12;
+
+    private final long baseSequence;
+    private final Path logFile;
+    private final Path indexFile;
+    private final FileChannel logChannel;
+    private final FileChannel indexChannel;
+    private final MappedByteBuffer log;
+    private final MappedByteBuffer index;
+    private final CRC32C crc = new CRC32C();
+
+    // 稀疏索引的内存副本，用于二分查找
+    private final long[] indexSequences;
+    private final int[] indexPositions;
+    private int indexCount;
+
+    private volatile int writePosition;
+    private int lastIndexedPosition = -INDEX_INTERVAL_BYTES;
+    private long nextSequence;
+
+    private LogSegment(Path dir, long baseSequence, int capacity) throws IOException {
+        this.baseSequence = baseSequence;
+        this.logFile = dir.resolve(fileName(baseSequence, LOG_SUFFIX));
+        this.indexFile = dir.resolve(fileName(baseSequence, INDEX_SUFFIX));
+        this.logChannel = FileChannel.open(logFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.indexChannel = FileChannel.open(indexFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int logCapacity = (int) Math.max(capacity, logChannel.size());
+        int indexEntries = logCapacity / INDEX_INTERVAL_BYTES + 2;
+        this.log = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, logCapacity);
+        this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) indexEntries * INDEX_ENTRY_LENGTH);
+        this.indexSequences = new long[indexEntries];
+        this.indexPositions = new int[indexEntries];
+        this.nextSequence = baseSequence;
+    }
+
+    /**
+     * 创建新的段
+     */
+    static LogSegment create(Path dir, long baseSequence, int capacity) throws IOException {
+        return new LogSegment(dir, baseSequence, capacity);
+    }
+
+    /**
+     * 打开已有的段：加载稀疏索引，再从最后一个索引位置向后扫描，
+     * 直到遇到空记录、校验失败或序号不连续的记录，以此确定写入位置
+     */
+    static LogSegment open(Path dir, long baseSequence) throws IOException {
+        LogSegment segment = new LogSegment(dir, baseSequence, 0);
+        segment.recover();
+        return segment;
+    }
+
+    private void recover() {
+        int maxEntries = indexSequences.length;
+        while (indexCount < maxEntries) {
+            int offset = indexCount * INDEX_ENTRY_LENGTH;
+            long sequence = index.getLong(offset);
+            if (sequence == 0) {
+                break;
+            }
+            indexSequences[indexCount] = sequence;
+            indexPositions[indexCount] = index.getInt(offset + 8);
+            indexCount++;
+        }
+        // 索引项和它指向的记录在不同的文件中，崩溃时索引项可能先于记录落盘：
+        // 最后一个索引项指向的不是一条有效记录时丢弃它，退回前一个索引项
+        int position = 0;
+        long expected = baseSequence;
+        while (indexCount > 0) {
+            if (recordEnd(indexPositions[indexCount - 1], indexSequences[indexCount - 1]) >= 0) {
+                position = indexPositions[indexCount - 1];
+                expected = indexSequences[indexCount - 1];
+                break;
+            }
+            indexCount--;
+            index.putLong(indexCount * INDEX_ENTRY_LENGTH, 0);
+        }
+        int end;
+        while ((end = recordEnd(position, expected)) >= 0) {
+            position = end;
+            expected++;
+        }
+        // 丢弃末尾不完整的记录，保证后续写入从干净的位置开始
+        for (int i = position; i < Math.min(log.capacity(), position + RECORD_HEADER_LENGTH); i++) {
+            log.put(i, (byte) 0);
+        }
+        lastIndexedPosition = indexCount > 0 ? indexPositions[indexCount - 1] : -INDEX_INTERVAL_BYTES;
+        writePosition = position;
+        nextSequence = expected;
+    }
+
+    /**
+     * 校验指定位置上是否为序号为 sequence 的完整记录
+     *
+     * @return 记录的结束位置，不是有效记录时返回 -1
+     */
+    private int recordEnd(int position, long sequence) {
+        if (position < 0 || position + RECORD_HEADER_LENGTH > log.capacity()) {
+            return -1;
+        }
+        int length = log.getInt(position);
+        if (length <= 0 || position + RECORD_HEADER_LENGTH + length > log.capacity()
+                || log.getLong(position + 8) != sequence) {
+            return -1;
+        }
+        byte[] payload = new byte[length];
+        log.get(position + RECORD_HEADER_LENGTH, payload);
+        crc.reset();
+        crc.update(payload);
+        return (int) crc.getValue() == log.getInt(position + 4) ? position + RECORD_HEADER_LENGTH + length : -1;
+    }
+
+    /**
+     * 当前段能否再容纳指定长度的负载
+     */
+    boolean hasRoomFor(int payloadLength) {
+        return writePosition + RECORD_HEADER_LENGTH + payloadLength <= log.capacity()
+                && indexCount < indexSequences.length;
+    }
+
+    /**
+     * 追加一条记录（调用方保证空间足够且序号连续）
+     */
+    void append(long sequence, byte[] payload, int offset, int length) {
+        crc.reset();
+        crc.update(payload, offset, length);
+        int position = writePosition;
+        log.putLong(position + 8, sequence);
+        log.putInt(position + 4, (int) crc.getValue());
+        log.put(position + RECORD_HEADER_LENGTH, payload, offset, length);
+        log.putInt(position, length); // 最后写长度，保证记录完整后才可被恢复识别
+        if (position - lastIndexedPosition >= INDEX_INTERVAL_BYTES) {
+            int indexOffset = indexCount * INDEX_ENTRY_LENGTH;
+            index.putInt(indexOffset + 8, position);
+            index.putLong(indexOffset, sequence);
+            indexSequences[indexCount] = sequence;
+            indexPositions[indexCount] = position;
+            indexCount++;
+            lastIndexedPosition = position;
+        }
+        writePosition = position + RECORD_HEADER_LENGTH + length;
+        nextSequence = sequence + 1;
+    }
+
+    /**
+     * 读取序号在 [from, to) 范围内的消息追加到 out 中
+     */
+    void read(long from, long to, List<Message> out) throws IOException, ClassNotFoundException {
+        int limit = writePosition;
+        int position = floorPosition(from);
+        while (position < limit) {
+            int length = log.getInt(position);
+            long sequence = log.getLong(position + 8);
+            if (sequence >= to) {
+                break;
+            }
+            if (sequence >= from) {
+                byte[] payload = new byte[length];
+                log.get(position + RECORD_HEADER_LENGTH, payload);
+                out.add(BinaryMessageCodec.decode(payload, 0, length));
+            }
+            position += RECORD_HEADER_LENGTH + length;
+        }
+    }
+
+    /**
+     * 通过稀疏索引找到不晚于指定序号的记录位置
+     */
+    private int floorPosition(long sequence) {
+        int low = 0;
+        int high = indexCount - 1;
+        int position = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indexSequences[mid] <= sequence) {
+                position = indexPositions[mid];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return position;
+    }
+
+    long getBaseSequence() {
+        return baseSequence;
+    }
+
+    /**
+     * 段内下一条消息的序号
+     */
+    long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * 将映射的内容刷到磁盘
+     */
+    void force() {
+        log.force();
+        index.force();
+    }
+
+    void close() throws IOException {
+        try {
+            logChannel.close();
+        } finally {
+            indexChannel.close();
+        }
+    }
+
+    /**
+     * 关闭并删除段文件（保留策略淘汰旧段时使用）
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(logFile);
+        Files.deleteIfExists(indexFile);
+    }
+
+    static String fileName(long baseSequence, String suffix) {
+        return String.format("%020d%s", baseSequence, suffix);
+    }
+}
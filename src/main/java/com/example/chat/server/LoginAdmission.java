@@ -0,0 +1,180 @@
+package com.example.chat.server;
+
+import com.example.chat.common.Message;
+import com.example.chat.common.MessageType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 登录准入控制
+ * 新连接从被接受到第一次登录请求处理完毕之前占用一个登录名额，名额用完时连接在有界队列中等待，
+ * 暂不分配线程或注册到事件循环；队列也满时由调用方回复 LOGIN_RETRY_AFTER 并关闭连接，客户端按抖动退避后重连。
+ * 服务器重启后大量客户端同时重连时，登录按固定的并发度平稳推进，而不是一次性创建成千上万个线程争用 addUser。
+ * 取得名额后超过登录超时仍未发出登录请求的连接会被断开，避免空闲连接长期占用名额
+ */
+class LoginAdmission implements AutoCloseable {
+    private final int maxConcurrent;
+    private final int queueSize;
+    private final long retryAfterMillis;
+    private final long timeoutMillis;
+    private final Deque<Pending> waiting = new ArrayDeque<>(); // 由对象锁保护
+    private int active; // 占用名额的连接数，由对象锁保护
+    // 发布给指标读取的副本：在对象锁内随 active 和 waiting 一起更新，读取不加锁，不与准入和归还争用
+    private volatile int publishedActive;
+    private volatile int publishedWaiting;
+    private final ScheduledExecutorService timer;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    LoginAdmission(ServerConfig config) {
+        this.maxConcurrent = Math.max(1, config.getMaxConcurrentLogins());
+        this.queueSize = Math.max(0, config.getLoginQueueSize());
+        this.retryAfterMillis = config.getLoginRetryAfterMillis();
+        this.timeoutMillis = config.getLoginTimeoutMillis();
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "login-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 接受一个新连接：有空闲名额时立即执行 start，否则加入等待队列，在其他连接释放名额后执行
+     *
+     * @return 等待队列已满时返回 false，调用方应回复 {@link #retryAfter()} 并关闭连接
+     */
+    boolean admit(ClientConnection connection, Runnable start) {
+        Pending pending = new Pending(connection, start);
+        synchronized (this) {
+            if (active >= maxConcurrent) {
+                if (waiting.size() >= queueSize) {
+                    rejected.increment();
+                    return false;
+                }
+                waiting.add(pending);
+                publishedWaiting = waiting.size();
+                queued.increment();
+                return true;
+            }
+            publishedActive = ++active;
+        }
+        begin(pending);
+        return true;
+    }
+
+    /**
+     * 交给连接一个登录名额并开始处理，超时后断开仍未登录的连接
+     */
+    private void begin(Pending pending) {
+        admitted.increment();
+        ClientConnection connection = pending.connection;
+        ScheduledFuture<?> deadline = timer.schedule(() -> {
+            if (connection.releaseLoginSlot()) {
+                timedOut.increment();
+                connection.abortLogin();
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        connection.holdLoginSlot(() -> {
+            deadline.cancel(false);
+            release();
+        });
+        pending.start.run();
+    }
+
+    /**
+     * 归还一个名额，等待队列非空时直接转交给队首的连接
+     */
+    private void release() {
+        Pending next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                publishedActive = --active;
+                return;
+            }
+            publishedWaiting = waiting.size();
+        }
+        begin(next);
+    }
+
+    /**
+     * 回复给被拒绝连接的消息，data={retryAfterMillis}
+     */
+    Message retryAfter() {
+        return Message.builder()
+                .type(MessageType.LOGIN_RETRY_AFTER)
+                .content("服务器繁忙，请稍后重试")
+                .sender("SERVER")
+                .data(Map.of("retryAfterMillis", retryAfterMillis))
+                .build();
+    }
+
+    /**
+     * 服务器关闭：断开所有仍在排队的连接
+     */
+    @Override
+    public void close() {
+        List<Pending> dropped;
+        synchronized (this) {
+            dropped = new ArrayList<>(waiting);
+            waiting.clear();
+            publishedWaiting = 0;
+        }
+        dropped.forEach(pending -> pending.connection.abortLogin());
+        timer.shutdownNow();
+    }
+
+    /**
+     * 正在登录（占用名额）的连接数，不获取对象锁
+     */
+    int getActive() {
+        return publishedActive;
+    }
+
+    /**
+     * 正在排队等待名额的连接数，不获取对象锁
+     */
+    int getWaiting() {
+        return publishedWaiting;
+    }
+
+    long getAdmitted() {
+        return admitted.sum();
+    }
+
+    long getRejected() {
+        return rejected.sum();
+    }
+
+    long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "登录中 " + publishedActive + " 个，排队 " + publishedWaiting + " 个；累计准入 " + admitted.sum()
+                + " 个，排队 " + queued.sum() + " 个，拒绝 " + rejected.sum() + " 个，超时 " + timedOut.sum() + " 个";
+    }
+
+    private static final class Pending {
+        private final ClientConnection connection;
+        private final Runnable start;
+
+        Pending(ClientConnection connection, Runnable start) {
+            this.connection = connection;
+            this.start = start;
+        }
+    }
+}
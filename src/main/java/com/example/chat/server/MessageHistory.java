@@ -0,0 +1,97 @@
+package com.example.chat.server;
+
+import com.example.chat.common.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 固定容量的环形消息历史
+ * 每条消息分配从 1 开始单调递增的序号，写入只覆盖最旧的槽位，不移动已有元素。
+ * 写入之间用锁串行（逻辑上只有一个写者），读取不加锁：按序号从新到旧读取槽位，
+ * 遇到已被覆盖的槽位就停止，因此得到的总是一段连续的最新消息，读者不会阻塞写者
+ */
+class MessageHistory implements RoomHistory {
+    private final int capacity;
+    private final AtomicReferenceArray<Entry> slots;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile long nextSequence = 1; // 下一条消息的序号，发布写入的同时保证槽位对读者可见
+
+    MessageHistory(int capacity) {
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    @Override
+    public long append(Message message) {
+        writeLock.lock();
+        try {
+            long sequence = nextSequence;
+            slots.set(index(sequence), new Entry(sequence, message));
+            nextSequence = sequence + 1;
+            return sequence;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Message> recent(int n) {
+        return before(nextSequence, n);
+    }
+
+    @Override
+    public List<Message> before(long before, int limit) {
+        long end = Math.min(before, nextSequence);
+        long start = Math.max(Math.max(1, end - capacity), end - limit);
+        if (start >= end) {
+            return new ArrayList<>();
+        }
+        Message[] snapshot = new Message[(int) (end - start)];
+        int first = snapshot.length;
+        for (long sequence = end - 1; sequence >= start; sequence--) {
+            Entry entry = slots.get(index(sequence));
+            if (entry == null || entry.sequence != sequence) {
+                break; // 已被并发写入覆盖，更早的消息同样不再可用
+            }
+            snapshot[--first] = entry.message;
+        }
+        return new ArrayList<>(Arrays.asList(snapshot).subList(first, snapshot.length));
+    }
+
+    @Override
+    public Message get(long sequence) {
+        if (sequence < 1 || sequence >= nextSequence) {
+            return null;
+        }
+        Entry entry = slots.get(index(sequence));
+        return entry != null && entry.sequence == sequence ? entry.message : null;
+    }
+
+    @Override
+    public long firstSequence() {
+        return Math.max(1, nextSequence - capacity);
+    }
+
+    @Override
+    public long lastSequence() {
+        return nextSequence - 1;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    private static final class Entry {
+        private final long sequence;
+        private final Message message;
+
+        Entry(long sequence, Message message) {
+            this.sequence = sequence;
+            this.message = message;
+        }
+    }
+}
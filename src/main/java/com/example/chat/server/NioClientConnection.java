@@ -0,0 +1,302 @@
+package com.example.chat.server;
+
+import com.example.chat.common.EncodedMessage;
+import com.example.chat.common.FrameCodec;
+import com.example.chat.common.Message;
+import com.example.chat.common.MessageType;
+import com.example.chat.common.WireCodec;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * NIO 模式下的客户端连接
+ * 读写都在所属的 {@link NioEventLoop} 线程中完成：读到完整帧后直接交给消息处理器，
+ * 其他线程发送的消息先编码入队，再由事件循环以非阻塞方式写出。
+ * 发送积压由 {@link OutboundQueue} 按高低水位控制，PAUSE_READS 策略下拥塞期间取消关注 OP_READ
+ */
+@Slf4j
+class NioClientConnection extends ClientConnection {
+    private static final int INITIAL_READ_BUFFER = 8 * 1024;
+    private static final int MAX_GATHER = 64; // 单次聚集写出的最大缓冲区数
+    private static final int MAX_GATHER_BYTES = 64 * 1024; // 单次聚集写出的字节数上限
+
+    private final SocketChannel channel;
+    private final NioEventLoop eventLoop;
+    private final OutboundQueue<ByteBuffer> writeQueue;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    // 以下字段只在事件循环线程中访问
+    private SelectionKey key;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private int gatherCount; // gather 中尚未写完的缓冲区数量
+    private boolean loggedIn;
+    private Message rejection; // 准入被拒绝时回复给客户端的消息，注册前设置
+    private volatile WireCodec codec; // 握手完成前为 null
+
+    NioClientConnection(SocketChannel channel, NioEventLoop eventLoop,
+            ServerState serverState, ServerMessageProcessor messageProcessor, ServerConfig config) {
+        super(serverState, messageProcessor);
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.writeQueue = new OutboundQueue<>(config, serverState);
+    }
+
+    /**
+     * 在事件循环线程中注册到 Selector
+     */
+    void register() {
+        try {
+            key = channel.register(eventLoop.selector(), SelectionKey.OP_READ, this);
+            running.set(true);
+        } catch (ClosedChannelException e) {
+            releaseLoginSlot();
+            closeTransport();
+        }
+    }
+
+    /**
+     * 登录名额和等待队列都已满：照常完成握手，收到登录请求后回复 rejection 并关闭连接
+     * 必须在 {@link #register()} 之前调用
+     */
+    void rejectLogin(Message rejection) {
+        this.rejection = rejection;
+    }
+
+    /**
+     * 通道可读：读取数据并切分出完整的帧
+     */
+    void onReadable() {
+        try {
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                log.debug("客户端断开连接: {}", channel.getRemoteAddress());
+                close();
+                return;
+            }
+            recordBytesIn(n);
+            readBuffer.flip();
+            decodeFrames();
+            readBuffer.compact();
+        } catch (IOException | ClassNotFoundException e) {
+            if (running.get() && e.getMessage() != null) {
+                log.error("接收消息失败: {}", e.getMessage());
+            }
+            close();
+        }
+    }
+
+    private void decodeFrames() throws IOException, ClassNotFoundException {
+        if (codec == null) {
+            if (readBuffer.remaining() < FrameCodec.HANDSHAKE_LENGTH) {
+                return;
+            }
+            if (readBuffer.getInt() != FrameCodec.MAGIC) {
+                throw new IOException("不支持的协议，NIO 模式只接受帧协议客户端");
+            }
+            codec = WireCodec.negotiate(readBuffer.get() & 0xFF);
+            writeQueue.offer(ByteBuffer.wrap(new byte[] { (byte) codec.getId() }), 1, false, null);
+            flush();
+        }
+
+        while (running.get() && readBuffer.remaining() >= FrameCodec.HEADER_LENGTH) {
+            int length = readBuffer.getInt(readBuffer.position());
+            FrameCodec.checkLength(length);
+            int frameLength = FrameCodec.HEADER_LENGTH + length;
+            if (readBuffer.remaining() < frameLength) {
+                ensureCapacity(frameLength);
+                return;
+            }
+            Message message = FrameCodec.decode(codec, readBuffer.array(),
+                    readBuffer.arrayOffset() + readBuffer.position() + FrameCodec.HEADER_LENGTH, length);
+            readBuffer.position(readBuffer.position() + frameLength);
+            dispatch(message);
+        }
+    }
+
+    /**
+     * 保证读缓冲区能够容纳一个完整的帧（此时缓冲区处于读模式）
+     */
+    private void ensureCapacity(int frameLength) {
+        if (readBuffer.capacity() < frameLength) {
+            ByteBuffer larger = ByteBuffer.allocate(frameLength);
+            larger.put(readBuffer);
+            larger.flip();
+            readBuffer = larger;
+        }
+    }
+
+    private void dispatch(Message message) {
+        if (loggedIn) {
+            messageProcessor.processMessage(message, this);
+        } else if (rejection != null) {
+            sendMessage(ServerMessageProcessor.retryReply(rejection,
+                    ServerMessageProcessor.hasCapability(message, "retry")));
+            close();
+        } else {
+            loggedIn = messageProcessor.processLogin(message, this);
+            // 第一次登录请求处理完毕即归还登录名额，之后的重试（如换用户名）不再占用名额
+            releaseLoginSlot();
+        }
+    }
+
+    /**
+     * 通道可写：继续写出积压的数据
+     */
+    void onWritable() {
+        flush();
+    }
+
+    /**
+     * 发送消息给客户端
+     * 可在任意线程调用，实际写出由事件循环线程完成
+     */
+    @Override
+    public void sendMessage(Message message) {
+        if (!running.get() || codec == null) {
+            return;
+        }
+        try {
+            enqueue(FrameCodec.encode(message, codec), false, message.getType());
+        } catch (IOException e) {
+            log.error("编码消息失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 发送预编码的消息，直接复用共享的帧数据
+     */
+    @Override
+    public void sendEncoded(EncodedMessage message, boolean droppable) {
+        if (!running.get() || codec == null) {
+            return;
+        }
+        try {
+            enqueue(message.frame(codec), droppable, message.getMessage().getType());
+        } catch (IOException e) {
+            log.error("编码消息失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 将帧加入写队列，并在事件循环中写出；积压超出限制时按慢速消费者策略断开连接
+     */
+    private void enqueue(byte[] frame, boolean droppable, MessageType type) {
+        if (!writeQueue.offer(ByteBuffer.wrap(frame), frame.length, droppable, type)) {
+            log.warn("客户端 {} 发送积压超出限制，断开连接（{}）", getUsername(), serverState.getOutboundStats());
+            writeQueue.close();
+            if (eventLoop.inEventLoop()) {
+                close();
+            } else {
+                eventLoop.execute(this::close);
+            }
+            return;
+        }
+        if (eventLoop.inEventLoop()) {
+            flush();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            eventLoop.execute(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * 尽可能多地写出队列中的数据；写不完时关注 OP_WRITE，写完后取消关注；拥塞期间不关注 OP_READ
+     * 队列中已有的多个帧通过一次聚集写（gathering write）合并写出
+     */
+    private void flush() {
+        if (!running.get() || key == null) {
+            return;
+        }
+        try {
+            boolean drained = writeGathered();
+            int ops = writeQueue.isCongested() ? 0 : SelectionKey.OP_READ;
+            key.interestOps(drained ? ops : ops | SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            if (running.get() && e.getMessage() != null) {
+                log.error("发送消息失败: {}", e.getMessage());
+            }
+            close();
+        }
+    }
+
+    /**
+     * 批量写出 gather 和写队列中的数据，全部写完返回 true，套接字缓冲区已满返回 false
+     * 每轮从写队列取出的数据不超过 {@link #MAX_GATHER_BYTES}（至少一个帧），套接字写不动时积压留在队列中，
+     * 新到的交互消息仍可以按优先级排到批量数据之前
+     */
+    private boolean writeGathered() throws IOException {
+        while (true) {
+            long gathered = 0;
+            for (int i = 0; i < gatherCount; i++) {
+                gathered += gather[i].remaining();
+            }
+            ByteBuffer buffer;
+            while (gatherCount < MAX_GATHER && gathered < MAX_GATHER_BYTES && (buffer = writeQueue.poll()) != null) {
+                gather[gatherCount++] = buffer;
+                gathered += buffer.remaining();
+            }
+            if (gatherCount == 0) {
+                return true;
+            }
+            recordBytesOut(channel.write(gather, 0, gatherCount));
+            int done = 0;
+            while (done < gatherCount && !gather[done].hasRemaining()) {
+                done++;
+            }
+            System.arraycopy(gather, done, gather, 0, gatherCount - done);
+            for (int i = gatherCount - done; i < gatherCount; i++) {
+                gather[i] = null;
+            }
+            gatherCount -= done;
+            if (gatherCount > 0) {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public int getQueuedMessages() {
+        return writeQueue.getQueuedMessages();
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        return writeQueue.getQueuedBytes();
+    }
+
+    /**
+     * 关闭通道，在事件循环线程中关闭时先尽力写出剩余数据
+     */
+    @Override
+    protected void closeTransport() {
+        try {
+            if (eventLoop.inEventLoop() && channel.isOpen()) {
+                writeGathered();
+            }
+        } catch (IOException ignored) {
+            // 连接即将关闭，忽略剩余数据写出失败
+        }
+        writeQueue.close();
+        closeChannel();
+    }
+
+    /**
+     * 只关闭通道，用于正常的关闭流程本身失败时兜底
+     */
+    void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // 忽略关闭通道时的异常
+        }
+    }
+}
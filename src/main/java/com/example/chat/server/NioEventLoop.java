@@ -0,0 +1,136 @@
+package com.example.chat.server;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * NIO 事件循环
+ * 每个事件循环独占一个线程和一个 Selector，负责其上所有连接的读写；
+ * 其他线程通过 {@link #execute(Runnable)} 把任务投递到循环线程中执行。
+ * 单个任务或单个连接抛出的任何异常（包括 Error，如栈溢出）只影响它自己：
+ * 任务被丢弃、连接被关闭，循环线程继续服务其余连接
+ */
+@Slf4j
+class NioEventLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    NioEventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    /**
+     * 当前线程是否为本事件循环线程
+     */
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * 投递任务到事件循环线程
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                runTasks();
+                selector.select();
+                processSelectedKeys();
+            } catch (IOException e) {
+                if (running) {
+                    log.error("事件循环异常: {}", e.getMessage());
+                }
+            } catch (Throwable t) {
+                log.error("事件循环异常", t);
+            }
+        }
+        closeAll();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log.error("事件循环任务执行失败", t);
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            NioClientConnection connection = (NioClientConnection) key.attachment();
+            try {
+                if (key.isValid() && key.isReadable()) {
+                    connection.onReadable();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.onWritable();
+                }
+            } catch (Throwable t) {
+                log.error("处理连接事件失败", t);
+                closeQuietly(connection);
+                key.cancel();
+            }
+        }
+    }
+
+    private static void closeQuietly(NioClientConnection connection) {
+        try {
+            connection.close();
+        } catch (Throwable t) {
+            log.error("关闭连接失败", t);
+            connection.closeChannel();
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioClientConnection connection) {
+                closeQuietly(connection);
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // 忽略关闭 Selector 时的异常
+        }
+    }
+
+    /**
+     * 停止事件循环并关闭其上的所有连接
+     */
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.chat.server;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * NIO 传输模式：接收线程负责 accept，新连接按轮询分配给固定数量的事件循环，
+ * 经过 {@link LoginAdmission} 准入后才注册到事件循环
+ */
+@Slf4j
+class NioServer {
+    private final ServerState state;
+    private final ServerMessageProcessor messageProcessor;
+    private final ServerConfig config;
+    private final LoginAdmission loginAdmission;
+    private final NioEventLoop[] eventLoops;
+    private int nextLoop;
+
+    NioServer(ServerState state, ServerMessageProcessor messageProcessor, ServerConfig config,
+            LoginAdmission loginAdmission) throws IOException {
+        this.state = state;
+        this.messageProcessor = messageProcessor;
+        this.config = config;
+        this.loginAdmission = loginAdmission;
+        this.eventLoops = new NioEventLoop[Math.max(1, config.getEventLoopThreads())];
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new NioEventLoop("nio-event-loop-" + i);
+            eventLoops[i].start();
+        }
+    }
+
+    /**
+     * 在当前线程中循环接受连接，直到服务器停止
+     */
+    void serve(ServerSocketChannel serverChannel) {
+        while (state.isRunning()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                if (!state.isRunning()) {
+                    channel.close();
+                    break;
+                }
+                System.out.println("新的客户端连接：" + channel.getRemoteAddress());
+
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                NioEventLoop eventLoop = eventLoops[nextLoop];
+                nextLoop = (nextLoop + 1) % eventLoops.length;
+                NioClientConnection connection = new NioClientConnection(channel, eventLoop, state, messageProcessor,
+                        config);
+                // 登录名额用完时通道暂不注册，排队等待；队列也满时照常注册，收到登录请求后回复稍后重试
+                if (!loginAdmission.admit(connection, () -> eventLoop.execute(connection::register))) {
+                    connection.rejectLogin(loginAdmission.retryAfter());
+                    eventLoop.execute(connection::register);
+                }
+            } catch (IOException e) {
+                if (state.isRunning()) {
+                    log.error("接受客户端连接时发生错误: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 停止所有事件循环
+     */
+    void shutdown() {
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+    }
+}
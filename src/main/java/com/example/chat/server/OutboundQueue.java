@@ -0,0 +1,270 @@
+package com.example.chat.server;
+
+import com.example.chat.common.MessageType;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个连接的待发送队列
+ * 按消息数和字节数统计积压量：超过高水位时按 {@link ServerConfig.SlowConsumerPolicy} 处理，
+ * 回落到低水位以下才解除拥塞状态。无论哪种策略，积压达到高水位的两倍时都要求断开连接，保证内存有界。
+ * 队列按消息类型分为两个优先级通道：历史翻页、检索结果、列表、快照等大块数据以及依附于快照的增量通知走批量通道，
+ * 其余（聊天消息、私聊、错误、登出确认、加入房间时的最近历史等）走交互通道。出队时优先取交互通道，每连续取出
+ * {@link #BULK_SHARE} 个交互消息后让批量通道取出一个，批量数据只在帧与帧之间让路，同一通道内保持原有顺序
+ *
+ * @param <T> 队列元素类型（阻塞模式为预编码消息，NIO 模式为待写出的缓冲区）
+ */
+class OutboundQueue<T> {
+    static final int BULK_SHARE = 8; // 两个通道都有积压时，每个批量消息之前最多先发送的交互消息数
+
+    /**
+     * 批量通道的消息类型：体积大、可以晚一些到达。在线状态和聊天室目录的增量与对应的快照同属一个通道，
+     * 保证增量不会越过快照先到达。加入房间时回放的最近历史（ROOM_HISTORY_RESPONSE）不在其中：
+     * 客户端把它追加在已收到的消息之后，必须先于加入之后的新消息到达
+     */
+    private static final Set<MessageType> BULK_TYPES = EnumSet.of(
+            MessageType.USER_LIST_RESPONSE,
+            MessageType.USER_JOINED_NOTIFICATION,
+            MessageType.USER_LEFT_NOTIFICATION,
+            MessageType.LIST_ROOMS_RESPONSE,
+            MessageType.ROOM_CREATED_NOTIFICATION,
+            MessageType.ROOM_DESTROYED_NOTIFICATION,
+            MessageType.ROOM_UPDATED_NOTIFICATION,
+            MessageType.ROOM_HISTORY_PAGE_RESPONSE,
+            MessageType.ROOM_SEARCH_RESPONSE,
+            MessageType.PRESENCE_SNAPSHOT,
+            MessageType.PRESENCE_DELTA,
+            MessageType.ROOM_DIRECTORY_SNAPSHOT,
+            MessageType.ROOM_DIRECTORY_PAGE);
+
+    private final ServerConfig config;
+    private final OutboundStats stats;
+    private final LoadShedder loadShedder;
+    private final ServerMetrics metrics;
+    private final Deque<Entry<T>> interactive = new ArrayDeque<>();
+    private final Deque<Entry<T>> bulk = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition relieved = lock.newCondition();
+
+    private volatile int messages; // 只在持有锁时修改，读取积压量（管理接口）不加锁
+    private volatile long bytes;
+    private boolean congested; // PAUSE_READS 策略下超过高水位后尚未回落到低水位
+    private boolean closed;
+    private int interactiveStreak; // 批量通道有积压时连续取出的交互消息数
+
+    OutboundQueue(ServerConfig config, ServerState serverState) {
+        this.config = config;
+        this.stats = serverState.getOutboundStats();
+        this.loadShedder = serverState.getLoadShedder();
+        this.metrics = serverState.getMetrics();
+    }
+
+    /**
+     * 入队
+     *
+     * @param size      元素的字节数，无法预先得知时传 0，只按消息数统计
+     * @param droppable 是否为可丢弃的房间广播
+     * @param type      消息类型，决定进入哪个通道；null（如握手回复）进入交互通道
+     * @return 积压超出限制、连接应被断开时返回 false
+     */
+    boolean offer(T item, int size, boolean droppable, MessageType type) {
+        lock.lock();
+        try {
+            if (closed) {
+                return true;
+            }
+            Entry<T> entry = new Entry<>(item, size, droppable, System.nanoTime());
+            (isBulk(type) ? bulk : interactive).addLast(entry);
+            messages++;
+            bytes += size;
+            metrics.outboundOffered(messages);
+            if (!aboveHighWatermark()) {
+                return true;
+            }
+            switch (config.getSlowConsumerPolicy()) {
+                case DISCONNECT:
+                    stats.slowConsumerDisconnected();
+                    return false;
+                case DROP_OLDEST:
+                    dropOldestBroadcasts();
+                    break;
+                case PAUSE_READS:
+                    if (!congested) {
+                        congested = true;
+                        stats.readsPaused();
+                    }
+                    break;
+            }
+            if (aboveHardLimit()) {
+                stats.slowConsumerDisconnected();
+                return false;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static boolean isBulk(MessageType type) {
+        return type != null && BULK_TYPES.contains(type);
+    }
+
+    /**
+     * 丢弃最早入队的房间广播，直到积压回落到低水位；先丢弃批量通道中的（在线状态增量），再丢弃交互通道中的
+     */
+    private void dropOldestBroadcasts() {
+        int dropped = dropOldestBroadcasts(bulk) + dropOldestBroadcasts(interactive);
+        if (dropped > 0) {
+            stats.messagesDropped(dropped);
+            metrics.outboundRemoved(dropped);
+        }
+    }
+
+    private int dropOldestBroadcasts(Deque<Entry<T>> entries) {
+        int dropped = 0;
+        Iterator<Entry<T>> it = entries.iterator();
+        while (it.hasNext() && !belowLowWatermark()) {
+            Entry<T> entry = it.next();
+            if (entry.droppable) {
+                it.remove();
+                messages--;
+                bytes -= entry.size;
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * 取出下一个待发送的元素，队列为空时返回 null；出队的元素的排队时间记录到 {@link LoadShedder}
+     * 优先取交互通道，批量通道有积压时每 {@link #BULK_SHARE} 个交互消息之后取一个批量消息，避免批量数据被饿死
+     */
+    T poll() {
+        Entry<T> entry;
+        lock.lock();
+        try {
+            if (bulk.isEmpty() || (!interactive.isEmpty() && interactiveStreak < BULK_SHARE)) {
+                entry = interactive.pollFirst();
+                interactiveStreak = bulk.isEmpty() ? 0 : interactiveStreak + 1;
+            } else {
+                entry = bulk.pollFirst();
+                interactiveStreak = 0;
+            }
+            if (entry == null) {
+                return null;
+            }
+            messages--;
+            bytes -= entry.size;
+            metrics.outboundRemoved(1);
+            if (congested && belowLowWatermark()) {
+                congested = false;
+                relieved.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        loadShedder.record(entry.enqueuedAt);
+        return entry.item;
+    }
+
+    /**
+     * 积压的消息数，不加锁读取
+     */
+    int getQueuedMessages() {
+        return messages;
+    }
+
+    /**
+     * 积压的字节数（旧版对象流不统计字节），不加锁读取
+     */
+    long getQueuedBytes() {
+        return bytes;
+    }
+
+    boolean isEmpty() {
+        lock.lock();
+        try {
+            return interactive.isEmpty() && bulk.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 是否应暂停读取（PAUSE_READS 策略下超过高水位后尚未回落到低水位）
+     */
+    boolean isCongested() {
+        lock.lock();
+        try {
+            return congested;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待拥塞解除或队列关闭
+     */
+    void awaitRelieved() throws InterruptedException {
+        lock.lock();
+        try {
+            while (congested && !closed) {
+                relieved.await(1, TimeUnit.SECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭队列并丢弃所有待发送的元素
+     */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            interactive.clear();
+            bulk.clear();
+            metrics.outboundRemoved(messages);
+            messages = 0;
+            bytes = 0;
+            congested = false;
+            relieved.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean aboveHighWatermark() {
+        return messages > config.getOutboundHighWatermark() || bytes > config.getOutboundHighWatermarkBytes();
+    }
+
+    private boolean belowLowWatermark() {
+        return messages <= config.getOutboundLowWatermark() && bytes <= config.getOutboundLowWatermarkBytes();
+    }
+
+    private boolean aboveHardLimit() {
+        return messages > 2L * config.getOutboundHighWatermark() || bytes > 2 * config.getOutboundHighWatermarkBytes();
+    }
+
+    private static final class Entry<T> {
+        private final T item;
+        private final int size;
+        private final boolean droppable;
+        private final long enqueuedAt; // 入队时的 System.nanoTime()
+
+        Entry(T item, int size, boolean droppable, long enqueuedAt) {
+            this.item = item;
+            this.size = size;
+            this.droppable = droppable;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.chat.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 发送积压相关的计数器，所有连接共享，用于调整高低水位
+ */
+public class OutboundStats {
+    private final LongAdder droppedMessages = new LongAdder();
+    private final LongAdder slowConsumerDisconnects = new LongAdder();
+    private final LongAdder readPauses = new LongAdder();
+
+    void messagesDropped(int count) {
+        droppedMessages.add(count);
+    }
+
+    void slowConsumerDisconnected() {
+        slowConsumerDisconnects.increment();
+    }
+
+    void readsPaused() {
+        readPauses.increment();
+    }
+
+    /**
+     * 因积压被丢弃的房间广播数
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.sum();
+    }
+
+    /**
+     * 因积压被断开的慢速消费者连接数
+     */
+    public long getSlowConsumerDisconnects() {
+        return slowConsumerDisconnects.sum();
+    }
+
+    /**
+     * 因积压暂停读取的次数
+     */
+    public long getReadPauses() {
+        return readPauses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "丢弃广播 " + getDroppedMessages() + " 条，断开慢速连接 " + getSlowConsumerDisconnects()
+                + " 个，暂停读取 " + getReadPauses() + " 次";
+    }
+}
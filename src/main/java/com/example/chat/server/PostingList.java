@@ -0,0 +1,147 @@
+package com.example.chat.server;
+
+import java.util.Arrays;
+
+/**
+ * 紧凑的倒排列表：按升序保存包含某个词项的消息序号
+ * 序号每 {@link #BLOCK_SIZE} 个分为一块，块内第一个序号记录在跳表数组中，
+ * 其余序号以与前一个序号的差值按 varint 编码存入字节数组，通常每个序号只占 1~2 字节。
+ * 查找某个序号或从某个位置向前遍历时，先二分查找块，再只解码这一块。
+ * 只在所属 {@link RoomSearchIndex} 的邮箱中访问，不需要同步
+ */
+final class PostingList {
+    static final int BLOCK_SIZE = 128;
+
+    private byte[] data = new byte[16];
+    private int length;
+    private long[] blockFirst = new long[1];
+    private int[] blockOffset = new int[1];
+    private int blocks;
+    private int count;
+    private long last;
+
+    /**
+     * 追加一个序号，必须大于已有的所有序号，否则忽略
+     */
+    void add(long sequence) {
+        if (count > 0 && sequence <= last) {
+            return;
+        }
+        if (count % BLOCK_SIZE == 0) {
+            if (blocks == blockFirst.length) {
+                blockFirst = Arrays.copyOf(blockFirst, blocks * 2);
+                blockOffset = Arrays.copyOf(blockOffset, blocks * 2);
+            }
+            blockFirst[blocks] = sequence;
+            blockOffset[blocks] = length;
+            blocks++;
+        } else {
+            writeVarLong(sequence - last);
+        }
+        last = sequence;
+        count++;
+    }
+
+    /**
+     * 序号数量
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * 编码占用的字节数（不含跳表）
+     */
+    int byteSize() {
+        return length;
+    }
+
+    /**
+     * 是否包含指定序号
+     */
+    boolean contains(long sequence, long[] buffer) {
+        int block = floorBlock(sequence);
+        if (block < 0) {
+            return false;
+        }
+        int n = decodeBlock(block, buffer);
+        return Arrays.binarySearch(buffer, 0, n, sequence) >= 0;
+    }
+
+    /**
+     * 小于等于指定序号的最后一块，没有时返回 -1
+     */
+    int floorBlock(long sequence) {
+        int low = 0;
+        int high = blocks - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (blockFirst[mid] <= sequence) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 将一块解码到 buffer 中（长度至少为 {@link #BLOCK_SIZE}），返回序号数量
+     */
+    int decodeBlock(int block, long[] buffer) {
+        int end = block + 1 < blocks ? blockOffset[block + 1] : length;
+        int position = blockOffset[block];
+        long value = blockFirst[block];
+        int n = 0;
+        buffer[n++] = value;
+        while (position < end) {
+            long delta = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = data[position++] & 0xFF;
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            value += delta;
+            buffer[n++] = value;
+        }
+        return n;
+    }
+
+    /**
+     * 只保留不小于 first 的序号，返回新的列表；全部被淘汰时返回 null
+     */
+    PostingList retainFrom(long first) {
+        if (count == 0 || last < first) {
+            return null;
+        }
+        if (blockFirst[0] >= first) {
+            return this;
+        }
+        PostingList retained = new PostingList();
+        long[] buffer = new long[BLOCK_SIZE];
+        for (int block = Math.max(0, floorBlock(first)); block < blocks; block++) {
+            int n = decodeBlock(block, buffer);
+            for (int i = 0; i < n; i++) {
+                if (buffer[i] >= first) {
+                    retained.add(buffer[i]);
+                }
+            }
+        }
+        return retained;
+    }
+
+    private void writeVarLong(long value) {
+        if (length + 10 > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + 10));
+        }
+        while ((value & ~0x7FL) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+}
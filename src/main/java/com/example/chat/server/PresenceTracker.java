@@ -0,0 +1,157 @@
+package com.example.chat.server;
+
+import com.example.chat.common.EncodedMessage;
+import com.example.chat.common.Message;
+import com.example.chat.common.MessageType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * 在线状态（presence）子系统
+ * 上线和下线先记录为待处理事件，每个周期（tick）合并一次：同一用户在一个周期内的多次变化只保留最终状态，
+ * 然后把版本号加一，向订阅了在线状态的连接广播一条包含本周期全部上线、下线用户的 PRESENCE_DELTA。
+ * 客户端登录时（或版本号不连续时）取得一次带版本号的完整快照，之后只需按版本号顺序应用增量，
+ * 不必反复拉取 O(用户数) 的完整列表。快照、订阅和增量的版本号分配持有同一把锁，保证快照之后的增量不漏；
+ * 增量在锁外经 {@link DeltaFanOut} 按版本号顺序扇出，可能晚于已经包含它的快照到达，客户端按版本号跳过
+ */
+public class PresenceTracker implements AutoCloseable {
+    private final ServerState serverState;
+    private final Queue<Event> pending = new ConcurrentLinkedQueue<>();
+    private final Set<String> roster = new HashSet<>(); // 已广播的在线用户，由对象锁保护
+    private long version; // 当前版本号，由对象锁保护
+    private final DeltaFanOut fanOut = new DeltaFanOut();
+    private volatile ScheduledExecutorService ticker;
+
+    PresenceTracker(ServerState serverState) {
+        this.serverState = serverState;
+    }
+
+    /**
+     * 按固定周期合并并广播增量；未启动时每个事件立即生效（不广播）
+     */
+    public synchronized void start(long tickMillis) {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "presence-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录用户上线
+     */
+    void online(String username) {
+        record(new Event(username, true));
+    }
+
+    /**
+     * 记录用户下线
+     */
+    void offline(String username) {
+        record(new Event(username, false));
+    }
+
+    private void record(Event event) {
+        pending.add(event);
+        if (ticker == null) {
+            tick();
+        }
+    }
+
+    /**
+     * 订阅在线状态增量，并在同一把锁内把带版本号的快照发送给该连接
+     * 快照只是一次入队，在锁内发送保证它先于之后分配版本号的增量到达
+     *
+     * @param snapshot 根据版本号和在线用户快照构造要发送的消息
+     */
+    synchronized void subscribe(ClientConnection connection, BiFunction<Long, List<String>, Message> snapshot) {
+        connection.setPresenceSubscribed(true);
+        connection.sendMessage(snapshot.apply(version, List.copyOf(roster)));
+    }
+
+    /**
+     * 当前版本号
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * 合并本周期的事件并广播增量
+     * 锁内只合并事件、分配版本号和编码，向所有订阅连接的扇出在释放锁之后进行
+     */
+    void tick() {
+        synchronized (this) {
+            if (ticker != null && serverState.getLoadShedder().deferPresence()) {
+                return; // 过载时推迟广播，事件留在队列中，负载回落后合并发出
+            }
+            Map<String, Boolean> latest = new LinkedHashMap<>();
+            Event event;
+            while ((event = pending.poll()) != null) {
+                latest.put(event.username, event.online);
+            }
+            List<String> joined = new ArrayList<>();
+            List<String> left = new ArrayList<>();
+            latest.forEach((username, online) -> {
+                if (online ? roster.add(username) : roster.remove(username)) {
+                    (online ? joined : left).add(username);
+                }
+            });
+            if (joined.isEmpty() && left.isEmpty()) {
+                return;
+            }
+
+            long from = version++;
+            Map<String, Object> delta = new HashMap<>();
+            delta.put("from", from);
+            delta.put("version", version);
+            delta.put("joined", joined);
+            delta.put("left", left);
+            EncodedMessage encoded = new EncodedMessage(Message.builder()
+                    .type(MessageType.PRESENCE_DELTA)
+                    .sender("SERVER")
+                    .data(delta)
+                    .build());
+            // 增量可以在发送积压时被丢弃，客户端发现版本号不连续会重新请求快照
+            fanOut.add(() -> serverState.forEachConnection(connection -> {
+                if (connection.isPresenceSubscribed()) {
+                    connection.sendEncoded(encoded, true);
+                }
+            }));
+        }
+        fanOut.flush();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    private static final class Event {
+        private final String username;
+        private final boolean online;
+
+        Event(String username, boolean online) {
+            this.username = username;
+            this.online = online;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.chat.server;
+
+import com.example.chat.common.MessageType;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按用户、按消息类型的令牌桶限流
+ * 每个受限的消息类型在连接的 {@link AtomicLongArray} 中占一个槽位，槽位只保存一个 long：
+ * 令牌桶的“理论到达时间”（GCRA 算法，与容量为突发数、每隔 interval 补充一个令牌的令牌桶等价）。
+ * 检查只需一次读取和一次 CAS，不加锁也不分配对象；未受限的消息类型只查一次数组即返回。
+ * 在线状态快照和房间目录快照请求是客户端重新同步的唯一途径，不允许配置限流
+ */
+public class RateLimiter {
+    private static final Set<MessageType> RESYNC_REQUESTS = EnumSet.of(
+            MessageType.PRESENCE_SNAPSHOT_REQUEST,
+            MessageType.ROOM_DIRECTORY_REQUEST);
+
+    private final long origin = System.nanoTime(); // 时间基准，保证槽位中的时间非负，初始值 0 表示桶是满的
+    private final int[] slots; // MessageType 序号 -> 槽位，-1 表示不限流
+    private final MessageType[] types; // 槽位 -> 消息类型
+    private final long[] intervals; // 每个槽位补充一个令牌的间隔（纳秒）
+    private final long[] tolerances; // 每个槽位允许提前的时间 = (突发容量 - 1) × 间隔
+    private final LongAdder[] rejected; // 每个槽位被拒绝的请求数
+
+    /**
+     * @param spec 限流配置，格式为 "类型=每秒个数/突发容量,..."，例如 "ROOM_MESSAGE_REQUEST=20/40"；为空时不限流
+     * @throws IllegalArgumentException 配置格式错误、消息类型不存在或是重新同步用的快照请求
+     */
+    public RateLimiter(String spec) {
+        String[] entries = spec == null || spec.isBlank() ? new String[0] : spec.trim().split("\\s*,\\s*");
+        this.slots = new int[MessageType.values().length];
+        Arrays.fill(slots, -1);
+        this.types = new MessageType[entries.length];
+        this.intervals = new long[entries.length];
+        this.tolerances = new long[entries.length];
+        this.rejected = new LongAdder[entries.length];
+        for (int slot = 0; slot < entries.length; slot++) {
+            String entry = entries[slot];
+            int equals = entry.indexOf('=');
+            int slash = entry.indexOf('/', equals + 1);
+            if (equals < 0 || slash < 0) {
+                throw new IllegalArgumentException("限流配置格式错误（应为 类型=每秒个数/突发容量）: " + entry);
+            }
+            MessageType type = MessageType.valueOf(entry.substring(0, equals).trim().toUpperCase());
+            double perSecond = Double.parseDouble(entry.substring(equals + 1, slash).trim());
+            int burst = Integer.parseInt(entry.substring(slash + 1).trim());
+            if (perSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("限流速率和突发容量必须为正数: " + entry);
+            }
+            if (RESYNC_REQUESTS.contains(type)) {
+                throw new IllegalArgumentException("快照请求用于客户端重新同步，不能限流: " + type);
+            }
+            if (slots[type.ordinal()] >= 0) {
+                throw new IllegalArgumentException("重复的限流配置: " + type);
+            }
+            slots[type.ordinal()] = slot;
+            types[slot] = type;
+            rejected[slot] = new LongAdder();
+            intervals[slot] = Math.max(1, Math.round(1_000_000_000 / perSecond));
+            tolerances[slot] = (burst - 1) * intervals[slot];
+        }
+    }
+
+    /**
+     * 为一个连接创建令牌桶，每个受限的消息类型一个 long
+     */
+    AtomicLongArray newBuckets() {
+        return new AtomicLongArray(types.length);
+    }
+
+    /**
+     * 尝试为一条请求取得令牌
+     *
+     * @return 0 表示放行，否则为距离下一个令牌可用的纳秒数
+     */
+    long acquire(AtomicLongArray buckets, MessageType type) {
+        int slot = type == null ? -1 : slots[type.ordinal()];
+        if (slot < 0) {
+            return 0;
+        }
+        long interval = intervals[slot];
+        long now = System.nanoTime() - origin;
+        while (true) {
+            long arrival = buckets.get(slot);
+            long allowedAt = arrival - tolerances[slot];
+            if (now < allowedAt) {
+                rejected[slot].increment();
+                return allowedAt - now;
+            }
+            if (buckets.compareAndSet(slot, arrival, Math.max(arrival, now) + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 被拒绝的请求总数
+     */
+    public long getRejected() {
+        long total = 0;
+        for (int slot = 0; slot < types.length; slot++) {
+            total += rejected[slot].sum();
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("拒绝 ").append(getRejected()).append(" 个请求");
+        for (int slot = 0; slot < types.length; slot++) {
+            long count = rejected[slot].sum();
+            if (count > 0) {
+                builder.append("，").append(types[slot]).append(' ').append(count);
+            }
+        }
+        return builder.toString();
+    }
+}
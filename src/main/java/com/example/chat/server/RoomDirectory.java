@@ -0,0 +1,97 @@
+package com.example.chat.server;
+
+import com.example.chat.common.EncodedMessage;
+import com.example.chat.common.Message;
+import com.example.chat.common.MessageType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带版本号的聊天室目录
+ * 聊天室创建、销毁和密码变更时版本号加一，通知消息直接携带该房间的摘要（名称、人数、是否有密码）和版本号，
+ * 客户端据此在本地更新房间列表，不再在每次通知后重新拉取完整列表。
+ * 快照和增量的版本号分配持有同一把锁，客户端只有在发现版本号不连续时才需要重新请求快照；
+ * 增量在锁外经 {@link DeltaFanOut} 按版本号顺序发给所有连接，晚于已包含它的快照到达时由客户端按版本号跳过。
+ * 增量中的人数是事件发生时的人数，之后的加入和离开不单独广播，准确人数以快照为准。
+ * ROOM_UPDATED_NOTIFICATION 是新增的类型，旧客户端反序列化时会失败并断开接收，只发给登录时声明了 directory 的连接
+ */
+public class RoomDirectory {
+    private final ServerState serverState;
+    private long version; // 当前版本号，由对象锁保护
+    private final DeltaFanOut fanOut = new DeltaFanOut();
+
+    RoomDirectory(ServerState serverState) {
+        this.serverState = serverState;
+    }
+
+    /**
+     * 当前版本号
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * 广播一次目录变更，通知消息附带 data={from, version, name, members, password}
+     * 除销毁外，房间已销毁时不再广播：销毁通知已经（或即将）在此之后发出。
+     * 变更通知只发给声明了 directory 的连接，旧客户端只收到创建和销毁通知。
+     * 锁内只分配版本号和编码，向所有连接的发送在释放锁之后进行
+     *
+     * @param type 通知类型：ROOM_CREATED_NOTIFICATION、ROOM_DESTROYED_NOTIFICATION 或 ROOM_UPDATED_NOTIFICATION
+     */
+    void publish(MessageType type, String content, ChatRoom room) {
+        synchronized (this) {
+            if (type != MessageType.ROOM_DESTROYED_NOTIFICATION && room.isDestroyed()) {
+                return;
+            }
+            long from = version++;
+            Map<String, Object> delta = summary(room);
+            delta.put("from", from);
+            delta.put("version", version);
+            EncodedMessage encoded = new EncodedMessage(Message.builder()
+                    .type(type)
+                    .content(content)
+                    .sender("SERVER")
+                    .data(delta)
+                    .build());
+            boolean directoryOnly = type == MessageType.ROOM_UPDATED_NOTIFICATION;
+            fanOut.add(() -> serverState.forEachConnection(connection -> {
+                if (!directoryOnly || connection.isDirectorySubscribed()) {
+                    connection.sendEncoded(encoded);
+                }
+            }));
+        }
+        fanOut.flush();
+    }
+
+    /**
+     * 在同一把锁内把带版本号的目录快照发送给该连接，data={version, rooms: 房间摘要列表}
+     * 快照只是一次入队，在锁内发送保证它先于之后分配版本号的增量到达
+     */
+    synchronized void sendSnapshot(ClientConnection connection) {
+        List<Map<String, Object>> rooms = new ArrayList<>();
+        serverState.getChatRooms().values().forEach(room -> rooms.add(summary(room)));
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("version", version);
+        snapshot.put("rooms", rooms);
+        connection.sendMessage(Message.builder()
+                .type(MessageType.ROOM_DIRECTORY_SNAPSHOT)
+                .sender("SERVER")
+                .data(snapshot)
+                .build());
+    }
+
+    /**
+     * 房间摘要 {name, members, password}
+     */
+    static Map<String, Object> summary(ChatRoom room) {
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("name", room.getName());
+        summary.put("members", room.getMemberCount());
+        summary.put("password", room.hasPassword());
+        return summary;
+    }
+}
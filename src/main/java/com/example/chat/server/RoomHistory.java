@@ -0,0 +1,44 @@
+package com.example.chat.server;
+
+import com.example.chat.common.Message;
+
+import java.util.List;
+
+/**
+ * 聊天室消息历史
+ * 内存中的环形缓冲区 {@link MessageHistory} 和磁盘上的 {@link RoomLog} 都实现该接口
+ */
+interface RoomHistory {
+
+    /**
+     * 追加一条消息，返回分配的序号（从 1 开始单调递增）
+     */
+    long append(Message message);
+
+    /**
+     * 获取最近的 n 条消息（按时间顺序）
+     */
+    List<Message> recent(int n);
+
+    /**
+     * 获取序号小于 before 的最近 limit 条消息（按时间顺序）
+     * 返回的消息序号连续且以 before - 1 结尾，因此下一页的游标为 before - 返回条数；
+     * 已被淘汰的消息不再返回
+     */
+    List<Message> before(long before, int limit);
+
+    /**
+     * 获取指定序号的消息，已被淘汰或不存在时返回 null
+     */
+    Message get(long sequence);
+
+    /**
+     * 最早可能仍被保留的消息序号
+     */
+    long firstSequence();
+
+    /**
+     * 最近一条消息的序号，没有消息时为 0
+     */
+    long lastSequence();
+}
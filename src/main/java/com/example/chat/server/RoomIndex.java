@@ -0,0 +1,219 @@
+package com.example.chat.server;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 聊天室目录的有序并发索引，支持按名称、人数和最近活跃时间分页查询
+ * 三个 {@link ConcurrentSkipListMap} 在房间创建、销毁、成员变更和收到消息时增量维护，
+ * 查询只需从游标位置开始遍历一页，不必在每次请求时对所有房间排序。
+ * 同一房间的索引更新持有该房间的对象锁，保证已销毁的房间不会被重新插入。
+ * 活跃时间按秒记录，同一秒内的多条消息只更新一次索引
+ */
+class RoomIndex {
+    static final int MAX_SCAN = 10_000; // 带前缀过滤的人数/活跃排序单次最多检查的房间数
+
+    /**
+     * 排序方式
+     */
+    enum Sort {
+        NAME, // 按名称升序
+        MEMBERS, // 按人数降序
+        ACTIVE // 按最近活跃时间降序
+    }
+
+    private final ConcurrentSkipListMap<String, ChatRoom> byName = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Key, ChatRoom> byMembers = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Key, ChatRoom> byActivity = new ConcurrentSkipListMap<>();
+    private final Map<String, Key> memberKeys = new ConcurrentHashMap<>();
+    private final Map<String, Key> activityKeys = new ConcurrentHashMap<>();
+
+    /**
+     * 房间创建后加入索引
+     */
+    void add(ChatRoom room) {
+        synchronized (room) {
+            byName.put(room.getName(), room);
+            reindex(room, byMembers, memberKeys, room.getMemberCount());
+            reindex(room, byActivity, activityKeys, room.getLastActivityTime() / 1000);
+        }
+    }
+
+    /**
+     * 房间被移除后从索引中删除
+     */
+    void remove(ChatRoom room) {
+        synchronized (room) {
+            if (!byName.remove(room.getName(), room)) {
+                return;
+            }
+            Key memberKey = memberKeys.remove(room.getName());
+            if (memberKey != null) {
+                byMembers.remove(memberKey);
+            }
+            Key activityKey = activityKeys.remove(room.getName());
+            if (activityKey != null) {
+                byActivity.remove(activityKey);
+            }
+        }
+    }
+
+    /**
+     * 成员变更后更新人数排序
+     */
+    void membersChanged(ChatRoom room) {
+        synchronized (room) {
+            if (byName.get(room.getName()) == room) {
+                reindex(room, byMembers, memberKeys, room.getMemberCount());
+            }
+        }
+    }
+
+    /**
+     * 收到消息后更新活跃排序，同一秒内已经更新过时直接返回
+     */
+    void touched(ChatRoom room) {
+        long second = room.getLastActivityTime() / 1000;
+        Key current = activityKeys.get(room.getName());
+        if (current != null && current.value >= second) {
+            return;
+        }
+        synchronized (room) {
+            if (byName.get(room.getName()) == room) {
+                reindex(room, byActivity, activityKeys, second);
+            }
+        }
+    }
+
+    private static void reindex(ChatRoom room, NavigableMap<Key, ChatRoom> index, Map<String, Key> keys, long value) {
+        Key key = new Key(value, room.getName());
+        Key old = keys.put(room.getName(), key);
+        if (key.equals(old)) {
+            return;
+        }
+        if (old != null) {
+            index.remove(old);
+        }
+        index.put(key, room);
+    }
+
+    /**
+     * 房间总数
+     */
+    int size() {
+        return byName.size();
+    }
+
+    void clear() {
+        byName.clear();
+        byMembers.clear();
+        byActivity.clear();
+        memberKeys.clear();
+        activityKeys.clear();
+    }
+
+    /**
+     * 查询一页房间：名称以 prefix 开头，位于游标 cursor（null 表示从头开始）之后的最多 limit 个
+     * 按名称排序时前缀直接对应跳表中的一段区间；按人数或活跃时间排序时边遍历边过滤，
+     * 单次最多检查 {@link #MAX_SCAN} 个房间，超出时返回已找到的部分和继续查询的游标
+     */
+    Page query(String prefix, Sort sort, String cursor, int limit) {
+        String namePrefix = prefix == null ? "" : prefix;
+        List<ChatRoom> rooms = new ArrayList<>();
+        if (sort == Sort.NAME) {
+            NavigableMap<String, ChatRoom> range = namePrefix.isEmpty()
+                    ? byName
+                    : byName.subMap(namePrefix, true, namePrefix + Character.MAX_VALUE, false);
+            if (cursor != null) {
+                range = range.tailMap(cursor, false);
+            }
+            for (ChatRoom room : range.values()) {
+                if (rooms.size() == limit) {
+                    return new Page(rooms, rooms.get(limit - 1).getName());
+                }
+                rooms.add(room);
+            }
+            return new Page(rooms, null);
+        }
+
+        NavigableMap<Key, ChatRoom> index = sort == Sort.MEMBERS ? byMembers : byActivity;
+        Key last = Key.parse(cursor);
+        int scanned = 0;
+        for (Map.Entry<Key, ChatRoom> entry : (last != null ? index.tailMap(last, false) : index).entrySet()) {
+            if (rooms.size() == limit || ++scanned > MAX_SCAN) {
+                return new Page(rooms, last.toString());
+            }
+            last = entry.getKey();
+            if (last.name.startsWith(namePrefix)) {
+                rooms.add(entry.getValue());
+            }
+        }
+        return new Page(rooms, null);
+    }
+
+    /**
+     * 一页查询结果和下一页的游标（null 表示没有更多结果）
+     */
+    @Getter
+    static final class Page {
+        private final List<ChatRoom> rooms;
+        private final String nextCursor;
+
+        Page(List<ChatRoom> rooms, String nextCursor) {
+            this.rooms = rooms;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    /**
+     * 排序键：数值降序，数值相同时按名称升序，游标的文本形式为 "数值:名称"
+     */
+    private static final class Key implements Comparable<Key> {
+        private final long value;
+        private final String name;
+
+        Key(long value, String name) {
+            this.value = value;
+            this.name = name;
+        }
+
+        static Key parse(String cursor) {
+            if (cursor == null) {
+                return null;
+            }
+            int separator = cursor.indexOf(':');
+            try {
+                return new Key(Long.parseLong(cursor.substring(0, separator)), cursor.substring(separator + 1));
+            } catch (RuntimeException e) {
+                return null; // 无法识别的游标从头开始
+            }
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byValue = Long.compare(other.value, value);
+            return byValue != 0 ? byValue : name.compareTo(other.name);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && key.value == value && key.name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(value) * 31 + name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return value + ":" + name;
+        }
+    }
+}
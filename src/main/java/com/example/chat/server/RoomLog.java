@@ -0,0 +1,217 @@
+package com.example.chat.server;
+
+import com.example.chat.common.BinaryMessageCodec;
+import com.example.chat.common.FrameCodec;
+import com.example.chat.common.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * 单个聊天室的持久化消息日志
+ * 只追加写入，按段滚动：当前段写满后在后台刷盘并创建新段，段数超过保留上限时删除最旧的段。
+ * 序号在重启后继续递增，加入房间时的历史回放直接从日志末尾读取
+ */
+@Slf4j
+class RoomLog implements RoomHistory {
+    private final String roomName;
+    private final Path dir;
+    private final int segmentBytes;
+    private final int retentionSegments;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private volatile LogSegment[] segments; // 按序号升序排列，最后一个是当前写入的段
+    private volatile long nextSequence; // 发布写入：读取只访问该序号之前的消息
+    private boolean closed; // 已关闭或已删除，之后的追加都被忽略（由写锁保护）
+
+    private RoomLog(String roomName, Path dir, int segmentBytes, int retentionSegments) {
+        this.roomName = roomName;
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.retentionSegments = Math.max(1, retentionSegments);
+    }
+
+    /**
+     * 打开（或创建）房间日志目录并恢复已有的段
+     */
+    static RoomLog open(String roomName, Path dir, int segmentBytes, int retentionSegments) throws IOException {
+        Files.createDirectories(dir);
+        RoomLog roomLog = new RoomLog(roomName, dir, segmentBytes, retentionSegments);
+        long[] bases;
+        try (Stream<Path> files = Files.list(dir)) {
+            bases = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(LogSegment.LOG_SUFFIX))
+                    .mapToLong(name -> Long.parseLong(name.substring(0, name.length() - LogSegment.LOG_SUFFIX.length())))
+                    .sorted()
+                    .toArray();
+        }
+        List<LogSegment> opened = new ArrayList<>();
+        for (long base : bases) {
+            opened.add(LogSegment.open(dir, base));
+        }
+        if (opened.isEmpty()) {
+            opened.add(LogSegment.create(dir, 1, segmentBytes));
+        }
+        roomLog.segments = opened.toArray(new LogSegment[0]);
+        roomLog.nextSequence = opened.get(opened.size() - 1).getNextSequence();
+        return roomLog;
+    }
+
+    /**
+     * 追加一条消息
+     * 写入失败时记录错误日志并返回 0，消息仍会正常广播，只是不会出现在历史中
+     */
+    @Override
+    public long append(Message message) {
+        byte[] frame;
+        try {
+            frame = BinaryMessageCodec.encodeFrame(message);
+        } catch (IOException e) {
+            log.error("聊天室 {} 的消息编码失败: {}", roomName, e.getMessage());
+            return 0;
+        }
+        int length = frame.length - FrameCodec.HEADER_LENGTH;
+        writeLock.lock();
+        try {
+            if (closed) {
+                return 0;
+            }
+            LogSegment active = segments[segments.length - 1];
+            if (!active.hasRoomFor(length)) {
+                active = roll(length);
+            }
+            long sequence = nextSequence;
+            active.append(sequence, frame, FrameCodec.HEADER_LENGTH, length);
+            nextSequence = sequence + 1;
+            return sequence;
+        } catch (IOException e) {
+            log.error("聊天室 {} 的日志写入失败: {}", roomName, e.getMessage());
+            return 0;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 创建新段，超出保留数量时删除最旧的段
+     * 写满的段在后台刷盘，避免同步的 msync 拖慢追加
+     */
+    private LogSegment roll(int payloadLength) throws IOException {
+        LogSegment[] current = segments;
+        LogSegment full = current[current.length - 1];
+        CompletableFuture.runAsync(full::force);
+        int capacity = Math.max(segmentBytes, LogSegment.RECORD_HEADER_LENGTH + payloadLength);
+        LogSegment created = LogSegment.create(dir, nextSequence, capacity);
+
+        int keep = Math.min(current.length, retentionSegments - 1);
+        LogSegment[] updated = Arrays.copyOfRange(current, current.length - keep, current.length + 1);
+        updated[keep] = created;
+        segments = updated;
+        for (int i = 0; i < current.length - keep; i++) {
+            try {
+                current[i].delete();
+            } catch (IOException e) {
+                log.warn("删除聊天室 {} 的过期日志段失败: {}", roomName, e.getMessage());
+            }
+        }
+        return created;
+    }
+
+    @Override
+    public List<Message> recent(int n) {
+        return before(nextSequence, n);
+    }
+
+    @Override
+    public List<Message> before(long before, int limit) {
+        long end = Math.min(before, nextSequence);
+        return read(Math.max(1, end - limit), end);
+    }
+
+    /**
+     * 读取序号在 [from, to) 范围内且仍被保留的消息
+     */
+    List<Message> read(long from, long to) {
+        long end = Math.min(to, nextSequence);
+        LogSegment[] current = segments;
+        List<Message> result = new ArrayList<>();
+        try {
+            for (int i = 0; i < current.length && from < end; i++) {
+                long segmentEnd = i + 1 < current.length ? current[i + 1].getBaseSequence() : end;
+                if (segmentEnd > from) {
+                    current[i].read(from, Math.min(segmentEnd, end), result);
+                }
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            log.error("读取聊天室 {} 的日志失败: {}", roomName, e.getMessage());
+        }
+        return result;
+    }
+
+    @Override
+    public long lastSequence() {
+        return nextSequence - 1;
+    }
+
+    @Override
+    public Message get(long sequence) {
+        List<Message> messages = read(sequence, sequence + 1);
+        return messages.isEmpty() ? null : messages.get(0);
+    }
+
+    @Override
+    public long firstSequence() {
+        return segments[0].getBaseSequence();
+    }
+
+    /**
+     * 刷盘并关闭所有段
+     */
+    void close() {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (LogSegment segment : segments) {
+                segment.force();
+                segment.close();
+            }
+        } catch (IOException e) {
+            log.warn("关闭聊天室 {} 的日志失败: {}", roomName, e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 关闭并删除整个日志目录（房间销毁时使用）
+     * 已映射的段在被回收前仍可读取，正在进行的读取和补建索引不会出错，只是不再有新消息
+     */
+    void delete() {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (LogSegment segment : segments) {
+                segment.delete();
+            }
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            log.warn("删除聊天室 {} 的日志失败: {}", roomName, e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
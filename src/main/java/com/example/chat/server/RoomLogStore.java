@@ -0,0 +1,72 @@
+package com.example.chat.server;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 数据目录下所有聊天室日志的管理器
+ * 每个聊天室一个子目录 {dataDir}/rooms/{roomName}/（房间名经过转义，不会产生路径分隔符或 ..）。
+ * 服务器重启后首次创建同名房间时恢复原来的日志；房间销毁时日志随之删除，
+ * 之后重新创建的同名房间从空日志开始，看不到上一个房间（可能设有密码）的历史。
+ * 已打开的日志在房间销毁或服务器关闭前一直保持打开
+ */
+@Slf4j
+public class RoomLogStore implements AutoCloseable {
+    private final Path roomsDir;
+    private final int segmentBytes;
+    private final int retentionSegments;
+    private final ConcurrentHashMap<String, RoomLog> logs = new ConcurrentHashMap<>();
+
+    public RoomLogStore(Path dataDir, int segmentBytes, int retentionSegments) {
+        this.roomsDir = dataDir.resolve("rooms");
+        this.segmentBytes = segmentBytes;
+        this.retentionSegments = retentionSegments;
+    }
+
+    /**
+     * 获取聊天室的日志，首次访问时打开并恢复
+     */
+    RoomLog open(String roomName) throws IOException {
+        try {
+            return logs.computeIfAbsent(roomName, name -> {
+                try {
+                    return RoomLog.open(name, roomsDir.resolve(directoryName(name)), segmentBytes, retentionSegments);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 房间已销毁：关闭并删除它的日志
+     * 只有仍登记为该房间当前日志时才移除登记，不会影响之后以同名重新打开的日志
+     */
+    void discard(String roomName, RoomLog roomLog) {
+        logs.remove(roomName, roomLog);
+        roomLog.delete();
+    }
+
+    private static String directoryName(String roomName) {
+        return URLEncoder.encode(roomName, StandardCharsets.UTF_8).replace(".", "%2E").replace("*", "%2A");
+    }
+
+    /**
+     * 刷盘并关闭所有已打开的日志
+     */
+    @Override
+    public void close() {
+        logs.values().forEach(RoomLog::close);
+        logs.clear();
+    }
+}
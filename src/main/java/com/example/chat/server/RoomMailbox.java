@@ -0,0 +1,68 @@
+package com.example.chat.server;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 聊天室邮箱（ACTOR 模式）
+ * 同一房间的操作按提交顺序在线程池中逐个执行，同一时刻最多一个工作线程处理该房间，
+ * 不同房间的邮箱可以在不同线程上并行执行
+ */
+@Slf4j
+class RoomMailbox implements Executor {
+    private static final int BATCH_SIZE = 64; // 每次调度最多执行的操作数，避免单个房间长期占用线程
+
+    private final String roomName;
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    RoomMailbox(String roomName, Executor executor) {
+        this.roomName = roomName;
+        this.executor = executor;
+    }
+
+    /**
+     * 投递一个房间操作，可在任意线程调用
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // 服务器正在关闭，丢弃剩余的房间操作
+                scheduled.set(false);
+                tasks.clear();
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable task;
+            for (int i = 0; i < BATCH_SIZE && (task = tasks.poll()) != null; i++) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("聊天室 {} 的操作执行失败: {}", roomName, e.getMessage(), e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.chat.server;
+
+import com.example.chat.common.Message;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * 单个聊天室的增量倒排索引
+ * 消息广播之后才投递到索引自己的邮箱中分词并追加到各词项的 {@link PostingList}，
+ * 建索引不会增加消息投递的延迟。查询同样在邮箱中执行，因此索引只有一个线程访问，不需要加锁。
+ * 历史淘汰的消息在索引中没有意义，每追加 {@link #COMPACT_INTERVAL} 条消息清理一次已淘汰的序号
+ */
+@Slf4j
+class RoomSearchIndex {
+    static final int MAX_SCAN = 10_000; // 单次查询最多检查的候选序号数，限制查询耗时
+    private static final int COMPACT_INTERVAL = 4096;
+    private static final int REBUILD_BATCH = 1000;
+
+    private final String roomName;
+    private final RoomHistory history;
+    private final RoomMailbox mailbox;
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final long[] buffer = new long[PostingList.BLOCK_SIZE];
+    private int sinceCompaction;
+
+    RoomSearchIndex(String roomName, RoomHistory history, Executor executor) {
+        this.roomName = roomName;
+        this.history = history;
+        this.mailbox = new RoomMailbox(roomName + "#index", executor);
+        long last = history.lastSequence();
+        if (last > 0) {
+            // 持久化日志中已有的消息在后台补建索引，之后的新消息排在其后
+            mailbox.execute(() -> rebuild(last));
+        }
+    }
+
+    /**
+     * 异步为一条消息建索引
+     */
+    void index(long sequence, String content) {
+        mailbox.execute(() -> add(sequence, content));
+    }
+
+    /**
+     * 异步查询：返回序号小于 before（0 表示不限）的最近 limit 条同时包含所有查询词的消息，从新到旧排列
+     * 候选序号先由倒排列表求交集，再读取消息原文确认包含每个查询词，排除二元组拼接产生的误命中
+     */
+    void search(String query, long before, int limit, Consumer<SearchResult> callback) {
+        mailbox.execute(() -> callback.accept(find(query, before, limit)));
+    }
+
+    private void add(long sequence, String content) {
+        for (String token : TextTokenizer.indexTokens(content)) {
+            postings.computeIfAbsent(token, key -> new PostingList()).add(sequence);
+        }
+        if (++sinceCompaction >= COMPACT_INTERVAL) {
+            compact();
+        }
+    }
+
+    private void rebuild(long last) {
+        int indexed = 0;
+        for (long from = history.firstSequence(); from <= last; from += REBUILD_BATCH) {
+            long end = Math.min(from + REBUILD_BATCH, last + 1);
+            List<Message> messages = history.before(end, (int) (end - from));
+            long first = end - messages.size(); // 返回的消息序号连续且以 end - 1 结尾
+            for (int i = 0; i < messages.size(); i++) {
+                add(first + i, messages.get(i).getContent());
+            }
+            indexed += messages.size();
+        }
+        log.info("聊天室 {} 的搜索索引已重建，共 {} 条消息", roomName, indexed);
+    }
+
+    /**
+     * 删除已被历史淘汰的序号和空的词项
+     */
+    private void compact() {
+        sinceCompaction = 0;
+        long first = history.firstSequence();
+        Iterator<Map.Entry<String, PostingList>> iterator = postings.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, PostingList> entry = iterator.next();
+            PostingList retained = entry.getValue().retainFrom(first);
+            if (retained == null) {
+                iterator.remove();
+            } else {
+                entry.setValue(retained);
+            }
+        }
+    }
+
+    private SearchResult find(String query, long before, int limit) {
+        List<Long> sequences = new ArrayList<>();
+        List<Message> messages = new ArrayList<>();
+        List<String> tokens = TextTokenizer.queryTokens(query);
+        if (tokens.isEmpty()) {
+            return new SearchResult(sequences, messages, 0);
+        }
+        PostingList[] lists = new PostingList[tokens.size()];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(tokens.get(i));
+            if (lists[i] == null) {
+                return new SearchResult(sequences, messages, 0);
+            }
+        }
+        // 从最短的列表出发，逐个确认其他列表是否包含该序号
+        Arrays.sort(lists, Comparator.comparingInt(PostingList::size));
+        String[] terms = query.toLowerCase(Locale.ROOT).trim().split("\\s+");
+
+        long upper = before > 0 ? before - 1 : Long.MAX_VALUE;
+        long[] candidates = new long[PostingList.BLOCK_SIZE];
+        int scanned = 0;
+        for (int block = lists[0].floorBlock(upper); block >= 0; block--) {
+            int n = lists[0].decodeBlock(block, candidates);
+            for (int i = n - 1; i >= 0; i--) {
+                long sequence = candidates[i];
+                if (sequence > upper) {
+                    continue;
+                }
+                if (++scanned > MAX_SCAN) {
+                    return new SearchResult(sequences, messages, sequence + 1); // 下一页从这里继续
+                }
+                if (!containsAll(lists, sequence)) {
+                    continue;
+                }
+                Message message = history.get(sequence);
+                if (message == null || !matches(message.getContent(), terms)) {
+                    continue;
+                }
+                sequences.add(sequence);
+                messages.add(message);
+                if (sequences.size() == limit) {
+                    return new SearchResult(sequences, messages, sequence > 1 ? sequence : 0);
+                }
+            }
+        }
+        return new SearchResult(sequences, messages, 0);
+    }
+
+    private boolean containsAll(PostingList[] lists, long sequence) {
+        for (int i = 1; i < lists.length; i++) {
+            if (!lists[i].contains(sequence, buffer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(String content, String[] terms) {
+        if (content == null) {
+            return false;
+        }
+        String normalized = content.toLowerCase(Locale.ROOT);
+        for (String term : terms) {
+            if (!normalized.contains(term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 一页查询结果：命中的序号和消息（从新到旧），以及下一页的游标（0 表示没有更多结果）
+     */
+    @Getter
+    static final class SearchResult {
+        private final List<Long> sequences;
+        private final List<Message> messages;
+        private final long nextCursor;
+
+        SearchResult(List<Long> sequences, List<Message> messages, long nextCursor) {
+            this.sequences = sequences;
+            this.messages = messages;
+            this.nextCursor = nextCursor;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.chat.server;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 服务器启动配置
+ * 默认值可以通过 -Dchat.xxx 系统属性覆盖
+ */
+@Getter
+@Builder
+public class ServerConfig {
+    public static final int DEFAULT_PORT = 8888;
+    public static final int DEFAULT_OUTBOUND_HIGH_WATERMARK = 1024;
+    public static final int DEFAULT_OUTBOUND_LOW_WATERMARK = 256;
+    public static final long DEFAULT_OUTBOUND_HIGH_WATERMARK_BYTES = 4L * 1024 * 1024;
+    public static final long DEFAULT_OUTBOUND_LOW_WATERMARK_BYTES = 1024 * 1024;
+    public static final int DEFAULT_LOG_SEGMENT_BYTES = 16 * 1024 * 1024;
+    public static final int DEFAULT_LOG_RETENTION_SEGMENTS = 8;
+    public static final long DEFAULT_PRESENCE_TICK_MILLIS = 200;
+    public static final int DEFAULT_MAX_CONCURRENT_LOGINS = 64;
+    public static final int DEFAULT_LOGIN_QUEUE_SIZE = 4096;
+    public static final long DEFAULT_LOGIN_RETRY_AFTER_MILLIS = 1000;
+    public static final long DEFAULT_LOGIN_TIMEOUT_MILLIS = 10_000;
+    public static final long DEFAULT_SHED_TARGET_MILLIS = 20;
+    public static final long DEFAULT_SHED_INTERVAL_MILLIS = 100;
+    public static final String DEFAULT_ADMIN_HOST = "127.0.0.1";
+    public static final String DEFAULT_RATE_LIMITS = "ROOM_MESSAGE_REQUEST=20/40,PRIVATE_MESSAGE_REQUEST=10/20,"
+            + "CREATE_ROOM_REQUEST=1/5,JOIN_ROOM_REQUEST=5/10,ROOM_HISTORY_PAGE_REQUEST=10/20,"
+            + "ROOM_SEARCH_REQUEST=5/10,ROOM_DIRECTORY_QUERY=10/20";
+
+    /**
+     * 连接传输模式
+     */
+    public enum TransportMode {
+        BLOCKING, // 每连接一个线程，阻塞式 Socket
+        NIO // Selector 事件循环，少量固定线程
+    }
+
+    /**
+     * 阻塞模式下执行 ClientHandler 的线程类型
+     */
+    public enum ExecutorMode {
+        PLATFORM, // 平台线程缓存线程池
+        VIRTUAL // 每个连接一个虚拟线程
+    }
+
+    @Builder.Default
+    private final int port = DEFAULT_PORT;
+
+    /**
+     * 聊天室操作的执行方式
+     */
+    public enum RoomExecution {
+        SHARED, // 在处理请求的线程中直接执行，依靠并发容器和锁保证线程安全
+        ACTOR // 每个聊天室一个邮箱，房间操作在线程池中按顺序串行执行
+    }
+
+    /**
+     * 发送积压超过高水位时对慢速消费者的处理策略
+     */
+    public enum SlowConsumerPolicy {
+        DROP_OLDEST, // 丢弃最早入队的房间广播，直到回落到低水位
+        DISCONNECT, // 断开连接
+        PAUSE_READS // 暂停读取该连接的请求，直到回落到低水位
+    }
+
+    @Builder.Default
+    private final TransportMode transport = TransportMode.BLOCKING;
+
+    @Builder.Default
+    private final ExecutorMode executor = ExecutorMode.PLATFORM;
+
+    @Builder.Default
+    private final boolean pinningMonitor = true; // 虚拟线程模式下是否检测载体线程钉住
+
+    @Builder.Default
+    private final int eventLoopThreads = Runtime.getRuntime().availableProcessors(); // NIO 模式下事件循环线程数
+
+    @Builder.Default
+    private final RoomExecution roomExecution = RoomExecution.SHARED;
+
+    private final String dataDir; // 聊天室日志的数据目录，为 null 时历史只保存在内存中
+
+    @Builder.Default
+    private final int logSegmentBytes = DEFAULT_LOG_SEGMENT_BYTES; // 日志段大小
+
+    @Builder.Default
+    private final int logRetentionSegments = DEFAULT_LOG_RETENTION_SEGMENTS; // 每个聊天室保留的日志段数
+
+    @Builder.Default
+    private final long presenceTickMillis = DEFAULT_PRESENCE_TICK_MILLIS; // 在线状态增量的合并广播周期
+
+    @Builder.Default
+    private final int maxConcurrentLogins = DEFAULT_MAX_CONCURRENT_LOGINS; // 同时处于握手和登录阶段的连接数上限
+
+    @Builder.Default
+    private final int loginQueueSize = DEFAULT_LOGIN_QUEUE_SIZE; // 等待登录名额的连接数上限，超出时回复稍后重试
+
+    @Builder.Default
+    private final long loginRetryAfterMillis = DEFAULT_LOGIN_RETRY_AFTER_MILLIS; // 回复给被拒绝客户端的建议重试间隔
+
+    @Builder.Default
+    private final long loginTimeoutMillis = DEFAULT_LOGIN_TIMEOUT_MILLIS; // 取得名额后必须在此时间内发出登录请求
+
+    @Builder.Default
+    private final String rateLimits = DEFAULT_RATE_LIMITS; // 每个用户各消息类型的速率限制："类型=每秒个数/突发容量,..."，为空时不限流
+
+    @Builder.Default
+    private final long shedTargetMillis = DEFAULT_SHED_TARGET_MILLIS; // 发送队列等待时间的目标值，持续超过时开始降载
+
+    @Builder.Default
+    private final long shedIntervalMillis = DEFAULT_SHED_INTERVAL_MILLIS; // 降载判断周期
+
+    private final int adminPort; // 管理接口（HTTP 指标和状态查询）的端口，0 表示不启动
+
+    @Builder.Default
+    private final String adminHost = DEFAULT_ADMIN_HOST; // 管理接口绑定的地址，默认只接受本机访问
+
+    @Builder.Default
+    private final SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP_OLDEST;
+
+    @Builder.Default
+    private final int outboundHighWatermark = DEFAULT_OUTBOUND_HIGH_WATERMARK; // 每个连接待发送消息数高水位
+
+    @Builder.Default
+    private final int outboundLowWatermark = DEFAULT_OUTBOUND_LOW_WATERMARK; // 每个连接待发送消息数低水位
+
+    @Builder.Default
+    private final long outboundHighWatermarkBytes = DEFAULT_OUTBOUND_HIGH_WATERMARK_BYTES; // 待发送字节数高水位
+
+    @Builder.Default
+    private final long outboundLowWatermarkBytes = DEFAULT_OUTBOUND_LOW_WATERMARK_BYTES; // 待发送字节数低水位
+
+    /**
+     * 根据配置创建执行客户端处理器的线程池
+     */
+    public ExecutorService createExecutor() {
+        return executor == ExecutorMode.VIRTUAL
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool();
+    }
+
+    /**
+     * 从系统属性读取配置
+     */
+    public static ServerConfig fromSystemProperties(int port) {
+        return ServerConfig.builder()
+                .port(port)
+                .transport(TransportMode.valueOf(
+                        System.getProperty("chat.transport", TransportMode.BLOCKING.name()).toUpperCase()))
+                .executor(ExecutorMode.valueOf(
+                        System.getProperty("chat.executor", ExecutorMode.PLATFORM.name()).toUpperCase()))
+                .pinningMonitor(Boolean.parseBoolean(System.getProperty("chat.pinningMonitor", "true")))
+                .eventLoopThreads(Integer.getInteger("chat.eventLoopThreads",
+                        Runtime.getRuntime().availableProcessors()))
+                .roomExecution(RoomExecution.valueOf(
+                        System.getProperty("chat.roomExecution", RoomExecution.SHARED.name()).toUpperCase()))
+                .dataDir(System.getProperty("chat.dataDir"))
+                .logSegmentBytes(Integer.getInteger("chat.logSegmentBytes", DEFAULT_LOG_SEGMENT_BYTES))
+                .logRetentionSegments(Integer.getInteger("chat.logRetentionSegments",
+                        DEFAULT_LOG_RETENTION_SEGMENTS))
+                .presenceTickMillis(Long.getLong("chat.presenceTickMillis", DEFAULT_PRESENCE_TICK_MILLIS))
+                .maxConcurrentLogins(Integer.getInteger("chat.maxConcurrentLogins", DEFAULT_MAX_CONCURRENT_LOGINS))
+                .loginQueueSize(Integer.getInteger("chat.loginQueueSize", DEFAULT_LOGIN_QUEUE_SIZE))
+                .loginRetryAfterMillis(Long.getLong("chat.loginRetryAfterMillis", DEFAULT_LOGIN_RETRY_AFTER_MILLIS))
+                .loginTimeoutMillis(Long.getLong("chat.loginTimeoutMillis", DEFAULT_LOGIN_TIMEOUT_MILLIS))
+                .rateLimits(System.getProperty("chat.rateLimits", DEFAULT_RATE_LIMITS))
+                .shedTargetMillis(Long.getLong("chat.shedTargetMillis", DEFAULT_SHED_TARGET_MILLIS))
+                .shedIntervalMillis(Long.getLong("chat.shedIntervalMillis", DEFAULT_SHED_INTERVAL_MILLIS))
+                .adminPort(Integer.getInteger("chat.adminPort", 0))
+                .adminHost(System.getProperty("chat.adminHost", DEFAULT_ADMIN_HOST))
+                .slowConsumerPolicy(SlowConsumerPolicy.valueOf(
+                        System.getProperty("chat.slowConsumerPolicy", SlowConsumerPolicy.DROP_OLDEST.name())
+                                .toUpperCase()))
+                .outboundHighWatermark(Integer.getInteger("chat.outboundHighWatermark",
+                        DEFAULT_OUTBOUND_HIGH_WATERMARK))
+                .outboundLowWatermark(Integer.getInteger("chat.outboundLowWatermark",
+                        DEFAULT_OUTBOUND_LOW_WATERMARK))
+                .outboundHighWatermarkBytes(Long.getLong("chat.outboundHighWatermarkBytes",
+                        DEFAULT_OUTBOUND_HIGH_WATERMARK_BYTES))
+                .outboundLowWatermarkBytes(Long.getLong("chat.outboundLowWatermarkBytes",
+                        DEFAULT_OUTBOUND_LOW_WATERMARK_BYTES))
+                .build();
+    }
+}
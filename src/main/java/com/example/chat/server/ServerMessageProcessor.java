@@ -1,7 +1,9 @@
 package com.example.chat.server;
 
+import com.example.chat.common.EncodedMessage;
 import com.example.chat.common.Message;
 import com.example.chat.common.MessageType;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -9,9 +11,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.ArrayList;
 import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
 
 /**
  * 服务器消息处理器，使用函数式方式处理不同类型的消息
@@ -19,11 +21,32 @@ import java.util.stream.Collectors;
 @Slf4j
 @RequiredArgsConstructor
 public class ServerMessageProcessor {
+    private static final int JOIN_HISTORY_SIZE = 30; // 加入房间时推送的历史条数
+    private static final int MAX_HISTORY_PAGE_SIZE = 100; // 分页历史、搜索结果和目录查询的单页上限
+    private static final int SEARCH_PAGE_SIZE = 20; // 搜索结果默认每页条数
+    private static final int DIRECTORY_PAGE_SIZE = 20; // 目录查询默认每页房间数
     private final ServerState serverState;
-    private final Map<MessageType, BiConsumer<Message, ClientHandler>> handlers;
+    private final ServerConfig.RoomExecution roomExecution;
+    private final Map<MessageType, BiConsumer<Message, ClientConnection>> handlers;
+    @Getter
+    private final RateLimiter rateLimiter;
 
     public ServerMessageProcessor(ServerState serverState) {
+        this(serverState, ServerConfig.RoomExecution.SHARED);
+    }
+
+    public ServerMessageProcessor(ServerState serverState, ServerConfig.RoomExecution roomExecution) {
+        this(serverState, roomExecution, new RateLimiter(null));
+    }
+
+    /**
+     * @param rateLimiter 请求分发前的限流，每个用户的每种消息类型各有一个令牌桶
+     */
+    public ServerMessageProcessor(ServerState serverState, ServerConfig.RoomExecution roomExecution,
+            RateLimiter rateLimiter) {
         this.serverState = serverState;
+        this.roomExecution = roomExecution;
+        this.rateLimiter = rateLimiter;
         this.handlers = new HashMap<>();
         initializeHandlers();
     }
@@ -39,22 +62,165 @@ public class ServerMessageProcessor {
         handlers.put(MessageType.ROOM_INFO_REQUEST, this::handleRoomInfoRequest);
         handlers.put(MessageType.LOGOUT_REQUEST, this::handleLogout);
         handlers.put(MessageType.CHANGE_ROOM_PASSWORD_REQUEST, this::handleChangePassword);
+        handlers.put(MessageType.ROOM_HISTORY_PAGE_REQUEST, this::handleRoomHistoryPage);
+        handlers.put(MessageType.ROOM_SEARCH_REQUEST, this::handleRoomSearch);
+        handlers.put(MessageType.PRESENCE_SNAPSHOT_REQUEST, this::handlePresenceSnapshotRequest);
+        handlers.put(MessageType.ROOM_DIRECTORY_REQUEST,
+                (message, handler) -> serverState.getRoomDirectory().sendSnapshot(handler));
+        handlers.put(MessageType.ROOM_DIRECTORY_QUERY, this::handleRoomDirectoryQuery);
+        handlers.replaceAll(this::timed);
+    }
+
+    /**
+     * 为处理器加上计数和计时，耗时记录到 {@link ServerMetrics}
+     * 房间内的操作交给邮箱执行时，记录的是提交到邮箱前的耗时
+     */
+    private BiConsumer<Message, ClientConnection> timed(MessageType type, BiConsumer<Message, ClientConnection> handler) {
+        ServerMetrics metrics = serverState.getMetrics();
+        return (message, connection) -> {
+            long start = System.nanoTime();
+            try {
+                handler.accept(message, connection);
+            } finally {
+                metrics.requestHandled(type, System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * 处理登录请求
+     * 返回true表示登录成功，连接已绑定用户名并加入在线用户列表
+     */
+    public boolean processLogin(Message loginMessage, ClientConnection connection) {
+        if (loginMessage.getType() != MessageType.LOGIN_REQUEST) {
+            connection.sendMessage(Message.createSystemMessage(
+                    MessageType.ERROR_MESSAGE,
+                    "请先登录!"));
+            return false;
+        }
+
+        String requestedUsername = loginMessage.getSender();
+
+        if (!isValidName(requestedUsername)) {
+            connection.sendMessage(Message.createSystemMessage(
+                    MessageType.ERROR_MESSAGE,
+                    "用户名只能包含大小写字母、数字和下划线"));
+            return false;
+        }
+
+        // 在加入在线列表之前记录，之后的目录通知都能看到
+        connection.setDirectorySubscribed(hasCapability(loginMessage, "directory"));
+        connection.setRetrySupported(hasCapability(loginMessage, "retry"));
+        if (serverState.addUser(requestedUsername, connection)) {
+            connection.setUsername(requestedUsername);
+
+            // 发送登录成功消息，包含当前在线用户列表和可用聊天室列表
+            if (hasCapability(loginMessage, "lite")) {
+                // 轻量登录：只返回人数和房间数，名单和目录由客户端按需获取（获取在线用户快照时才订阅增量）
+                connection.sendMessage(createLoginSummary());
+            } else if (hasCapability(loginMessage, "presence")) {
+                // 新版客户端：在线用户快照附带版本号，之后只接收增量
+                serverState.getPresence().subscribe(connection,
+                        (version, users) -> createLoginSuccess(users, version));
+            } else {
+                connection.sendMessage(createLoginSuccess(serverState.getOnlineUserList(), null));
+            }
+
+            return true;
+        }
+
+        connection.sendMessage(Message.createSystemMessage(
+                MessageType.LOGIN_FAILURE_USERNAME_TAKEN,
+                "用户名 '" + requestedUsername + "' 已被占用，请选择其他用户名"));
+        return false;
+    }
+
+    private Message createLoginSuccess(List<String> users, Long presenceVersion) {
+        Map<String, Object> loginData = new HashMap<>();
+        loginData.put("users", users);
+        loginData.put("rooms", serverState.getChatRoomList());
+        if (presenceVersion != null) {
+            loginData.put("presenceVersion", presenceVersion);
+        }
+        return Message.builder()
+                .type(MessageType.LOGIN_SUCCESS)
+                .content("登录成功！")
+                .data(loginData)
+                .sender("SERVER")
+                .build();
+    }
+
+    private Message createLoginSummary() {
+        Map<String, Object> loginData = new HashMap<>();
+        loginData.put("userCount", serverState.getOnlineUsers().size());
+        loginData.put("roomCount", serverState.getChatRooms().size());
+        return Message.builder()
+                .type(MessageType.LOGIN_SUCCESS)
+                .content("登录成功！")
+                .data(loginData)
+                .sender("SERVER")
+                .build();
+    }
+
+    /**
+     * 登录请求的 data 中是否声明了指定能力
+     */
+    static boolean hasCapability(Message loginMessage, String capability) {
+        return loginMessage != null && loginMessage.getData() instanceof Map<?, ?> capabilities
+                && Boolean.TRUE.equals(capabilities.get(capability));
+    }
+
+    /**
+     * 按客户端能力选择“稍后重试”类回复（RATE_LIMITED、LOGIN_RETRY_AFTER）
+     * 旧客户端的对象流不认识这些类型，反序列化失败会让其接收线程直接退出，
+     * 因此没有声明 retry 的客户端收到内容相同的 ERROR_MESSAGE
+     */
+    static Message retryReply(Message reply, boolean retrySupported) {
+        return retrySupported ? reply : Message.createSystemMessage(MessageType.ERROR_MESSAGE, reply.getContent());
     }
 
     /**
      * 处理消息
      */
-    public void processMessage(Message message, ClientHandler handler) {
+    public void processMessage(Message message, ClientConnection handler) {
+        long waitNanos = rateLimiter.acquire(handler.getRateBuckets(), message.getType());
+        if (waitNanos > 0) {
+            reject(message, handler, waitNanos, "发送过于频繁");
+            return;
+        }
+        LoadShedder loadShedder = serverState.getLoadShedder();
+        if (loadShedder.shedRequest(message.getType())) {
+            reject(message, handler, loadShedder.getRetryAfterNanos(), "服务器繁忙");
+            return;
+        }
         handlers.getOrDefault(message.getType(), (msg, h) -> log.warn("收到未知类型的消息: {}", msg.getType())).accept(message,
                 handler);
     }
 
+    /**
+     * 请求超出速率限制或因过载被降载：不处理，回复 RATE_LIMITED，data={requestType, retryAfterMillis}
+     * （未声明 retry 的旧客户端收到 ERROR_MESSAGE，见 {@link #retryReply}）。
+     * 回复可以在发送积压时被丢弃，持续刷屏的客户端不会因为拒绝回复而占用更多内存
+     */
+    private void reject(Message message, ClientConnection handler, long waitNanos, String reason) {
+        long retryAfterMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+        Map<String, Object> data = new HashMap<>();
+        data.put("requestType", message.getType().name());
+        data.put("retryAfterMillis", retryAfterMillis);
+        handler.sendEncoded(new EncodedMessage(retryReply(Message.builder()
+                .type(MessageType.RATE_LIMITED)
+                .content(reason + "，请在 " + retryAfterMillis + " 毫秒后重试")
+                .sender("SERVER")
+                .data(data)
+                .build(), handler.isRetrySupported())), true);
+    }
+
     /**
      * 处理私聊消息
      */
-    private void handlePrivateMessage(Message message, ClientHandler sender) {
-        Optional<ClientHandler> targetHandler = serverState.getClientHandler(message.getReceiver());
-        Optional<ClientHandler> senderHandler = serverState.getClientHandler(message.getSender());
+    private void handlePrivateMessage(Message message, ClientConnection sender) {
+        Optional<ClientConnection> targetHandler = serverState.getClientConnection(message.getReceiver());
+        Optional<ClientConnection> senderHandler = serverState.getClientConnection(message.getSender());
 
         Message deliveryMessage = Message.builder()
                 .type(MessageType.PRIVATE_MESSAGE_DELIVERY)
@@ -77,7 +243,7 @@ public class ServerMessageProcessor {
     /**
      * 处理用户列表请求
      */
-    private void handleUserListRequest(Message message, ClientHandler handler) {
+    private void handleUserListRequest(Message message, ClientConnection handler) {
         List<String> userList = serverState.getOnlineUserList();
         handler.sendMessage(Message.builder()
                 .type(MessageType.USER_LIST_RESPONSE)
@@ -86,10 +252,26 @@ public class ServerMessageProcessor {
                 .build());
     }
 
+    /**
+     * 处理在线用户快照请求：客户端发现增量版本不连续时重新同步
+     */
+    private void handlePresenceSnapshotRequest(Message message, ClientConnection handler) {
+        serverState.getPresence().subscribe(handler, (version, users) -> {
+            Map<String, Object> snapshot = new HashMap<>();
+            snapshot.put("version", version);
+            snapshot.put("users", users);
+            return Message.builder()
+                    .type(MessageType.PRESENCE_SNAPSHOT)
+                    .data(snapshot)
+                    .sender("SERVER")
+                    .build();
+        });
+    }
+
     /**
      * 处理创建聊天室请求
      */
-    private void handleCreateRoom(Message message, ClientHandler handler) {
+    private void handleCreateRoom(Message message, ClientConnection handler) {
         String roomName = message.getRoomName();
         String username = message.getSender();
         String password = (String) message.getData();
@@ -108,17 +290,20 @@ public class ServerMessageProcessor {
             return;
         }
 
-        ChatRoom newRoom = new ChatRoom(roomName, username, password);
-        if (serverState.addChatRoom(roomName, newRoom)) {
+        Optional<ChatRoom> created = serverState.createChatRoom(roomName, name -> new ChatRoom(name, username, password,
+                roomExecution == ServerConfig.RoomExecution.ACTOR ? serverState.getExecutorService() : null,
+                serverState.createRoomHistory(name), serverState.getExecutorService()));
+        if (created.isPresent()) {
+            ChatRoom newRoom = created.get();
             handler.sendMessage(Message.createSystemMessage(
                     MessageType.CREATE_ROOM_SUCCESS,
                     "新的聊天室 '" + roomName + "' 已创建"));
-            broadcastSystemMessage(Message.createSystemMessage(
-                    MessageType.ROOM_CREATED_NOTIFICATION,
-                    "新的聊天室 '" + roomName + "' 已创建"));
-
-            // 创建者自动加入房间
+            // 创建者自动加入房间，之后在房间的执行上下文中广播目录变更，使增量中的人数包含创建者
             handleJoinRoom(message, handler);
+            inRoom(newRoom, () -> serverState.getRoomDirectory().publish(
+                    MessageType.ROOM_CREATED_NOTIFICATION,
+                    "新的聊天室 '" + roomName + "' 已创建",
+                    newRoom));
         } else {
             handler.sendMessage(Message.createSystemMessage(
                     MessageType.CREATE_ROOM_FAILURE,
@@ -129,7 +314,7 @@ public class ServerMessageProcessor {
     /**
      * 处理加入聊天室请求
      */
-    private void handleJoinRoom(Message message, ClientHandler handler) {
+    private void handleJoinRoom(Message message, ClientConnection handler) {
         String roomName = message.getRoomName();
         String username = message.getSender();
         String password = (String) message.getData();
@@ -142,7 +327,14 @@ public class ServerMessageProcessor {
         }
 
         serverState.getChatRoom(roomName).ifPresentOrElse(
-                room -> {
+                room -> inRoom(room, () -> {
+                    if (room.isDestroyed()) {
+                        handler.sendMessage(Message.createSystemMessage(
+                                MessageType.JOIN_ROOM_FAILURE,
+                                "加入聊天室失败：聊天室 '" + roomName + "' 不存在"));
+                        return;
+                    }
+
                     if (!room.validatePassword(password)) {
                         handler.sendMessage(Message.createSystemMessage(
                                 MessageType.JOIN_ROOM_FAILURE,
@@ -150,25 +342,27 @@ public class ServerMessageProcessor {
                         return;
                     }
 
-                    if (room.addMember(username)) {
+                    if (serverState.joinRoom(username, room)) {
                         // 通知房间内所有成员有新用户加入
-                        broadcastToRoom(roomName, Message.builder()
+                        broadcastPresenceToRoom(roomName, Message.builder()
                                 .type(MessageType.USER_JOINED_ROOM_NOTIFICATION)
                                 .content("用户 " + username + " 加入了聊天室")
                                 .roomName(roomName)
                                 .sender("SERVER")
                                 .build());
 
-                        // 发送加入成功消息
+                        // 只推送最近一页历史，加入成功消息附带更早一页的游标，客户端按需加载
+                        long end = room.getLastSequence() + 1;
+                        List<Message> history = room.getMessagesBefore(end, JOIN_HISTORY_SIZE);
                         handler.sendMessage(Message.builder()
                                 .type(MessageType.JOIN_ROOM_SUCCESS)
                                 .content("成功加入聊天室 '" + roomName + "'")
                                 .roomName(roomName)
                                 .sender("SERVER")
+                                .data(nextHistoryCursor(end, history, JOIN_HISTORY_SIZE))
                                 .build());
 
                         // 发送历史消息
-                        List<Message> history = room.getRecentMessages(30);
                         if (!history.isEmpty()) {
                             handler.sendMessage(Message.builder()
                                     .type(MessageType.ROOM_HISTORY_RESPONSE)
@@ -177,12 +371,16 @@ public class ServerMessageProcessor {
                                     .data(history)
                                     .build());
                         }
+                    } else if (room.isDestroyed()) {
+                        handler.sendMessage(Message.createSystemMessage(
+                                MessageType.JOIN_ROOM_FAILURE,
+                                "加入聊天室失败：聊天室 '" + roomName + "' 不存在"));
                     } else {
                         handler.sendMessage(Message.createSystemMessage(
                                 MessageType.JOIN_ROOM_FAILURE,
                                 "加入聊天室失败：您已在房间中"));
                     }
-                },
+                }),
                 () -> handler.sendMessage(Message.createSystemMessage(
                         MessageType.JOIN_ROOM_FAILURE,
                         "加入聊天室失败：聊天室 '" + roomName + "' 不存在")));
@@ -191,39 +389,51 @@ public class ServerMessageProcessor {
     /**
      * 处理离开聊天室请求
      */
-    private void handleLeaveRoom(Message message, ClientHandler handler) {
+    private void handleLeaveRoom(Message message, ClientConnection handler) {
         String roomName = message.getRoomName();
         String username = message.getSender();
 
-        serverState.getChatRoom(roomName).ifPresent(room -> {
-            if (room.removeMember(username)) {
-                // 通知房间内的其他成员
-                broadcastToRoom(roomName, Message.builder()
-                        .type(MessageType.USER_LEFT_ROOM_NOTIFICATION)
-                        .content("用户 " + username + " 离开了聊天室")
-                        .roomName(roomName)
-                        .sender("SERVER")
-                        .build());
-
+        serverState.getChatRoom(roomName).ifPresent(room -> inRoom(room, () -> {
+            if (leaveRoom(username, room)) {
                 handler.sendMessage(Message.createSystemMessage(
                         MessageType.LEAVE_ROOM_SUCCESS,
                         "已离开聊天室 '" + roomName + "'"));
-
-                // 如果房间空了，就删除这个房间
-                if (room.isEmpty()) {
-                    serverState.removeChatRoom(roomName);
-                    broadcastSystemMessage(Message.createSystemMessage(
-                            MessageType.ROOM_DESTROYED_NOTIFICATION,
-                            "聊天室 '" + roomName + "' 已被销毁（没有活跃用户）"));
-                }
             }
-        });
+        }));
+    }
+
+    /**
+     * 让用户离开聊天室并通知其他成员，房间空了就销毁
+     * 必须在房间的执行上下文中调用（见 {@link #inRoom}）
+     */
+    private boolean leaveRoom(String username, ChatRoom room) {
+        String roomName = room.getName();
+        if (!serverState.leaveRoom(username, room)) {
+            return false;
+        }
+        // 通知房间内的其他成员
+        broadcastPresenceToRoom(roomName, Message.builder()
+                .type(MessageType.USER_LEFT_ROOM_NOTIFICATION)
+                .content("用户 " + username + " 离开了聊天室")
+                .roomName(roomName)
+                .sender("SERVER")
+                .build());
+
+        // 如果房间空了，就删除这个房间
+        if (room.destroyIfEmpty()) {
+            serverState.removeChatRoom(room);
+            serverState.getRoomDirectory().publish(
+                    MessageType.ROOM_DESTROYED_NOTIFICATION,
+                    "聊天室 '" + roomName + "' 已被销毁（没有活跃用户）",
+                    room);
+        }
+        return true;
     }
 
     /**
      * 处理聊天室消息
      */
-    private void handleRoomMessage(Message message, ClientHandler handler) {
+    private void handleRoomMessage(Message message, ClientConnection handler) {
         String roomName = message.getRoomName();
         String username = message.getSender();
 
@@ -235,7 +445,7 @@ public class ServerMessageProcessor {
         }
 
         serverState.getChatRoom(roomName).ifPresentOrElse(
-                room -> {
+                room -> inRoom(room, () -> {
                     if (!room.hasMember(username)) {
                         handler.sendMessage(Message.createSystemMessage(
                                 MessageType.ERROR_MESSAGE,
@@ -252,19 +462,135 @@ public class ServerMessageProcessor {
                             .build();
 
                     // 保存消息到房间历史记录
-                    room.addMessage(broadcastMessage);
+                    long sequence = room.addMessage(broadcastMessage);
 
                     broadcastToRoom(roomName, broadcastMessage);
+
+                    // 广播之后再异步建索引，不增加投递延迟
+                    room.indexMessage(sequence, broadcastMessage);
+                    serverState.roomTouched(room);
+                }),
+                () -> handler.sendMessage(Message.createSystemMessage(
+                        MessageType.ERROR_MESSAGE,
+                        "聊天室 '" + roomName + "' 不存在")));
+    }
+
+    /**
+     * 处理分页历史请求：返回游标之前的一页消息和下一页的游标
+     * 内存环形缓冲区和持久化日志都只读取请求的那一段
+     */
+    private void handleRoomHistoryPage(Message message, ClientConnection handler) {
+        String roomName = message.getRoomName();
+        String username = message.getSender();
+        long before = 0;
+        int limit = JOIN_HISTORY_SIZE;
+        if (message.getData() instanceof Map<?, ?> page) {
+            if (page.get("before") instanceof Number number) {
+                before = number.longValue();
+            }
+            if (page.get("limit") instanceof Number number) {
+                limit = Math.max(1, Math.min(number.intValue(), MAX_HISTORY_PAGE_SIZE));
+            }
+        }
+        long cursor = before;
+        int pageSize = limit;
+
+        serverState.getChatRoom(roomName).ifPresentOrElse(
+                room -> inRoom(room, () -> {
+                    if (!room.hasMember(username)) {
+                        handler.sendMessage(Message.createSystemMessage(
+                                MessageType.ERROR_MESSAGE,
+                                "您不是聊天室 '" + roomName + "' 的成员"));
+                        return;
+                    }
+
+                    long end = cursor > 0 ? cursor : room.getLastSequence() + 1;
+                    List<Message> history = room.getMessagesBefore(end, pageSize);
+                    Map<String, Object> page = new HashMap<>();
+                    page.put("messages", history);
+                    page.put("before", nextHistoryCursor(end, history, pageSize));
+                    handler.sendMessage(Message.builder()
+                            .type(MessageType.ROOM_HISTORY_PAGE_RESPONSE)
+                            .roomName(roomName)
+                            .sender("SERVER")
+                            .data(page)
+                            .build());
+                }),
+                () -> handler.sendMessage(Message.createSystemMessage(
+                        MessageType.ERROR_MESSAGE,
+                        "聊天室 '" + roomName + "' 不存在")));
+    }
+
+    /**
+     * 处理历史搜索请求：在房间的全文检索索引中查询，结果从新到旧分页返回
+     */
+    private void handleRoomSearch(Message message, ClientConnection handler) {
+        String roomName = message.getRoomName();
+        String username = message.getSender();
+        String query = null;
+        long before = 0;
+        int limit = SEARCH_PAGE_SIZE;
+        if (message.getData() instanceof Map<?, ?> search) {
+            if (search.get("query") instanceof String text) {
+                query = text.trim();
+            }
+            if (search.get("before") instanceof Number number) {
+                before = number.longValue();
+            }
+            if (search.get("limit") instanceof Number number) {
+                limit = Math.max(1, Math.min(number.intValue(), MAX_HISTORY_PAGE_SIZE));
+            }
+        }
+        if (query == null || query.isEmpty()) {
+            handler.sendMessage(Message.createSystemMessage(
+                    MessageType.ERROR_MESSAGE,
+                    "搜索失败：关键词不能为空"));
+            return;
+        }
+        String keywords = query;
+        long cursor = before;
+        int pageSize = limit;
+
+        serverState.getChatRoom(roomName).ifPresentOrElse(
+                room -> {
+                    if (!room.hasMember(username)) {
+                        handler.sendMessage(Message.createSystemMessage(
+                                MessageType.ERROR_MESSAGE,
+                                "您不是聊天室 '" + roomName + "' 的成员"));
+                        return;
+                    }
+                    room.searchMessages(keywords, cursor, pageSize, result -> {
+                        Map<String, Object> page = new HashMap<>();
+                        page.put("query", keywords);
+                        page.put("sequences", result.getSequences());
+                        page.put("messages", result.getMessages());
+                        page.put("before", result.getNextCursor());
+                        handler.sendMessage(Message.builder()
+                                .type(MessageType.ROOM_SEARCH_RESPONSE)
+                                .roomName(roomName)
+                                .sender("SERVER")
+                                .data(page)
+                                .build());
+                    });
                 },
                 () -> handler.sendMessage(Message.createSystemMessage(
                         MessageType.ERROR_MESSAGE,
                         "聊天室 '" + roomName + "' 不存在")));
     }
 
+    /**
+     * 计算下一页的游标：返回的消息序号连续且以 end - 1 结尾；
+     * 不足一页说明更早的消息已不存在或已被淘汰，此时为 0
+     */
+    private static long nextHistoryCursor(long end, List<Message> history, int limit) {
+        long first = end - history.size();
+        return history.size() < limit || first <= 1 ? 0L : first;
+    }
+
     /**
      * 处理列出聊天室请求
      */
-    private void handleListRoomsRequest(Message message, ClientHandler handler) {
+    private void handleListRoomsRequest(Message message, ClientConnection handler) {
         List<String> roomList = serverState.getChatRoomList();
         handler.sendMessage(Message.builder()
                 .type(MessageType.LIST_ROOMS_RESPONSE)
@@ -272,10 +598,65 @@ public class ServerMessageProcessor {
                 .build());
     }
 
+    /**
+     * 处理聊天室目录分页查询：按名称前缀过滤，按名称、人数或活跃时间排序，返回房间摘要和下一页游标
+     * 房间摘要直接取自 ChatRoom 已有的计数，不需要逐个请求房间信息
+     */
+    private void handleRoomDirectoryQuery(Message message, ClientConnection handler) {
+        String prefix = null;
+        String cursor = null;
+        String sortName = RoomIndex.Sort.NAME.name();
+        int limit = DIRECTORY_PAGE_SIZE;
+        if (message.getData() instanceof Map<?, ?> query) {
+            if (query.get("prefix") instanceof String text) {
+                prefix = text.trim();
+            }
+            if (query.get("cursor") instanceof String text && !text.isEmpty()) {
+                cursor = text;
+            }
+            if (query.get("sort") instanceof String text) {
+                sortName = text.trim().toUpperCase();
+            }
+            if (query.get("limit") instanceof Number number) {
+                limit = Math.max(1, Math.min(number.intValue(), MAX_HISTORY_PAGE_SIZE));
+            }
+        }
+        RoomIndex.Sort sort;
+        try {
+            sort = RoomIndex.Sort.valueOf(sortName);
+        } catch (IllegalArgumentException e) {
+            handler.sendMessage(Message.createSystemMessage(
+                    MessageType.ERROR_MESSAGE,
+                    "查询聊天室失败：排序方式只能是 name、members 或 active"));
+            return;
+        }
+
+        RoomIndex.Page result = serverState.queryRooms(prefix, sort, cursor, limit);
+        List<Map<String, Object>> rooms = new ArrayList<>(result.getRooms().size());
+        for (ChatRoom room : result.getRooms()) {
+            Map<String, Object> summary = RoomDirectory.summary(room);
+            summary.put("creationTime", room.getCreationTime());
+            summary.put("lastActivity", room.getLastActivityTime());
+            rooms.add(summary);
+        }
+        Map<String, Object> page = new HashMap<>();
+        page.put("prefix", prefix);
+        page.put("sort", sort.name().toLowerCase());
+        page.put("rooms", rooms);
+        if (result.getNextCursor() != null) {
+            page.put("cursor", result.getNextCursor());
+        }
+        handler.sendMessage(Message.builder()
+                .type(MessageType.ROOM_DIRECTORY_PAGE)
+                .sender("SERVER")
+                .data(page)
+                .build());
+    }
+
     /**
      * 处理房间信息请求
      */
-    private void handleRoomInfoRequest(Message message, ClientHandler handler) {
+    private void handleRoomInfoRequest(Message message, ClientConnection handler) {
         String roomName = message.getRoomName();
         if (roomName == null) {
             handler.sendMessage(Message.createSystemMessage(
@@ -285,7 +666,7 @@ public class ServerMessageProcessor {
         }
 
         serverState.getChatRoom(roomName).ifPresentOrElse(
-                room -> {
+                room -> inRoom(room, () -> {
                     Map<String, Object> roomInfo = new HashMap<>();
                     roomInfo.put("name", room.getName());
                     roomInfo.put("creator", room.getCreator());
@@ -297,7 +678,7 @@ public class ServerMessageProcessor {
                             .data(roomInfo)
                             .roomName(roomName)
                             .build());
-                },
+                }),
                 () -> handler.sendMessage(Message.createSystemMessage(
                         MessageType.ERROR_MESSAGE,
                         "请求房间信息失败：聊天室 '" + roomName + "' 不存在")));
@@ -306,17 +687,11 @@ public class ServerMessageProcessor {
     /**
      * 处理登出请求
      */
-    private void handleLogout(Message message, ClientHandler handler) {
+    private void handleLogout(Message message, ClientConnection handler) {
         String username = message.getSender();
 
-        // 获取用户所在的所有房间
-        List<String> userRooms = serverState.getChatRooms().entrySet().stream()
-                .filter(entry -> entry.getValue().hasMember(username))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
-
-        // 让用户离开所有房间
-        userRooms.forEach(roomName -> handleLeaveRoom(Message.builder()
+        // 通过反向索引让用户离开其所在的所有房间
+        serverState.getUserRooms(username).forEach(roomName -> handleLeaveRoom(Message.builder()
                 .type(MessageType.LEAVE_ROOM_REQUEST)
                 .sender(username)
                 .roomName(roomName)
@@ -333,22 +708,54 @@ public class ServerMessageProcessor {
     }
 
     /**
-     * 向所有在线用户广播系统消息
+     * 处理连接关闭（登出或异常断开）：让用户离开其所在的所有聊天室
+     * ACTOR 模式下离开操作在房间邮箱中延后执行，期间同名用户可能已重新登录并加入房间，
+     * 因此只在房间中登记的仍是该连接时才离开
+     */
+    public void processDisconnect(String username, ClientConnection connection) {
+        serverState.getUserRooms(username).forEach(roomName -> serverState.getChatRoom(roomName)
+                .ifPresent(room -> inRoom(room, () -> {
+                    if (room.getConnection(username) == connection) {
+                        leaveRoom(username, room);
+                    }
+                })));
+    }
+
+    /**
+     * 在聊天室的执行上下文中运行房间操作
+     * ACTOR 模式下投递到房间邮箱，同一房间的操作按顺序串行执行；SHARED 模式下直接在当前线程执行
      */
-    private void broadcastSystemMessage(Message message) {
-        serverState.getOnlineUsers().values()
-                .forEach(handler -> handler.sendMessage(message));
+    private void inRoom(ChatRoom room, Runnable operation) {
+        RoomMailbox mailbox = room.mailbox();
+        if (mailbox != null) {
+            mailbox.execute(operation);
+        } else {
+            operation.run();
+        }
     }
 
     /**
      * 在聊天室内广播消息
+     * 消息只编码一次，所有成员共享同一份帧数据；直接遍历房间的连接数组，不复制成员集合
      */
     private void broadcastToRoom(String roomName, Message message) {
-        serverState.getChatRoom(roomName).ifPresent(room -> room.getMembers().stream()
-                .map(username -> serverState.getClientHandler(username))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .forEach(handler -> handler.sendMessage(message)));
+        serverState.getChatRoom(roomName).ifPresent(room -> {
+            EncodedMessage encoded = new EncodedMessage(message);
+            ClientConnection[] connections = room.connections();
+            for (ClientConnection handler : connections) {
+                handler.sendEncoded(encoded, true);
+            }
+            serverState.getMetrics().roomBroadcast(connections.length);
+        });
+    }
+
+    /**
+     * 广播加入、离开房间的通知，过载降载时直接丢弃
+     */
+    private void broadcastPresenceToRoom(String roomName, Message message) {
+        if (!serverState.getLoadShedder().shedNotification()) {
+            broadcastToRoom(roomName, message);
+        }
     }
 
     /**
@@ -362,7 +769,7 @@ public class ServerMessageProcessor {
     /**
      * 处理修改房间密码请求
      */
-    private void handleChangePassword(Message message, ClientHandler handler) {
+    private void handleChangePassword(Message message, ClientConnection handler) {
         String roomName = message.getRoomName();
         String username = message.getSender();
         String newPassword = (String) message.getData();
@@ -375,7 +782,7 @@ public class ServerMessageProcessor {
         }
 
         serverState.getChatRoom(roomName).ifPresentOrElse(
-                room -> {
+                room -> inRoom(room, () -> {
                     if (!room.isCreator(username)) {
                         handler.sendMessage(Message.createSystemMessage(
                                 MessageType.CHANGE_ROOM_PASSWORD_FAILURE,
@@ -383,16 +790,23 @@ public class ServerMessageProcessor {
                         return;
                     }
 
+                    boolean hadPassword = room.hasPassword();
                     if (room.changePassword(username, newPassword)) {
                         handler.sendMessage(Message.createSystemMessage(
                                 MessageType.CHANGE_ROOM_PASSWORD_SUCCESS,
                                 "房间密码修改成功"));
+                        if (room.hasPassword() != hadPassword) {
+                            serverState.getRoomDirectory().publish(
+                                    MessageType.ROOM_UPDATED_NOTIFICATION,
+                                    "聊天室 '" + roomName + "' 已" + (hadPassword ? "取消" : "设置") + "密码",
+                                    room);
+                        }
                     } else {
                         handler.sendMessage(Message.createSystemMessage(
                                 MessageType.CHANGE_ROOM_PASSWORD_FAILURE,
                                 "修改密码失败：密码格式错误"));
                     }
-                },
+                }),
                 () -> handler.sendMessage(Message.createSystemMessage(
                         MessageType.CHANGE_ROOM_PASSWORD_FAILURE,
                         "修改密码失败：聊天室 '" + roomName + "' 不存在")));
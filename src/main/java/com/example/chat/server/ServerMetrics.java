@@ -0,0 +1,159 @@
+package com.example.chat.server;
+
+import com.example.chat.common.MessageType;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 服务器指标
+ * 记录每种请求的处理次数和处理耗时直方图、房间广播的扇出人数、收发字节数和发送队列深度，
+ * 其他组件的计数（在线人数、房间数、登录准入、限流、降载等）以命名的数值读数（gauge）注册进来，导出时才读取。
+ * 记录路径只有 {@link LongAdder} 累加，可以常开
+ */
+public class ServerMetrics {
+    private final LongAdder[] requests = new LongAdder[MessageType.values().length];
+    private final Histogram[] latencies = new Histogram[MessageType.values().length]; // 处理耗时（纳秒）
+    private final Histogram roomFanOut = new Histogram();
+    private final Histogram outboundDepth = new Histogram(); // 入队后该连接的积压消息数
+    private final LongAdder outboundQueued = new LongAdder(); // 所有连接当前积压的消息总数
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final NavigableMap<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    public ServerMetrics() {
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = new LongAdder();
+            latencies[i] = new Histogram();
+        }
+    }
+
+    /**
+     * 注册一个读数，同名的读数会被替换
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * 一个请求处理完毕
+     */
+    void requestHandled(MessageType type, long nanos) {
+        requests[type.ordinal()].increment();
+        latencies[type.ordinal()].record(nanos);
+    }
+
+    void roomBroadcast(int recipients) {
+        roomFanOut.record(recipients);
+    }
+
+    void bytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    void bytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * 消息入队，depth 为入队后该连接的积压消息数
+     */
+    void outboundOffered(int depth) {
+        outboundQueued.increment();
+        outboundDepth.record(depth);
+    }
+
+    /**
+     * 消息出队、被丢弃或随连接关闭被清除
+     */
+    void outboundRemoved(int count) {
+        outboundQueued.add(-count);
+    }
+
+    public long getRequests(MessageType type) {
+        return requests[type.ordinal()].sum();
+    }
+
+    public Histogram getLatency(MessageType type) {
+        return latencies[type.ordinal()];
+    }
+
+    public Histogram getRoomFanOut() {
+        return roomFanOut;
+    }
+
+    public Histogram getOutboundDepth() {
+        return outboundDepth;
+    }
+
+    public long getOutboundQueued() {
+        return outboundQueued.sum();
+    }
+
+    /**
+     * 已注册的读数（按名称排序的只读视图）
+     */
+    public Map<String, LongSupplier> getGauges() {
+        return Collections.unmodifiableMap(gauges);
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * 当前所有指标的快照：requests 按消息类型列出次数和耗时分位数（微秒），其余为直方图摘要和读数
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> requestStats = new LinkedHashMap<>();
+        for (MessageType type : MessageType.values()) {
+            long count = getRequests(type);
+            if (count > 0) {
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("count", count);
+                stats.putAll(summarize(latencies[type.ordinal()], TimeUnit.MICROSECONDS.toNanos(1)));
+                requestStats.put(type.name(), stats);
+            }
+        }
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("requests", requestStats);
+        snapshot.put("roomFanOut", summarize(roomFanOut, 1));
+        snapshot.put("outboundDepth", summarize(outboundDepth, 1));
+        snapshot.put("outboundQueued", getOutboundQueued());
+        snapshot.put("bytesIn", getBytesIn());
+        snapshot.put("bytesOut", getBytesOut());
+        gauges.forEach((name, value) -> snapshot.put(name, value.getAsLong()));
+        return snapshot;
+    }
+
+    private static Map<String, Object> summarize(Histogram histogram, long unit) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getCount());
+        summary.put("mean", Math.round(histogram.getMean() / unit));
+        summary.put("p50", histogram.getPercentile(50) / unit);
+        summary.put("p90", histogram.getPercentile(90) / unit);
+        summary.put("p99", histogram.getPercentile(99) / unit);
+        summary.put("max", histogram.getMax() / unit);
+        return summary;
+    }
+
+    @Override
+    public String toString() {
+        long total = 0;
+        for (LongAdder count : requests) {
+            total += count.sum();
+        }
+        return "处理请求 " + total + " 个，房间广播 " + roomFanOut.getCount() + " 次（平均扇出 "
+                + Math.round(roomFanOut.getMean()) + " 人），接收 " + getBytesIn() + " 字节，发送 " + getBytesOut() + " 字节";
+    }
+}
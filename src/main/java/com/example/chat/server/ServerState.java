@@ -1,37 +1,82 @@
 package com.example.chat.server;
 
+import java.io.IOException;
 import java.net.ServerSocket;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * 服务器状态类，使用不可变数据和函数式方法管理服务器状态
  */
+@Slf4j
 @Getter
 public class ServerState {
     private final int port;
-    private final ConcurrentHashMap<String, ClientHandler> onlineUsers;
+    private final ConcurrentHashMap<String, ClientConnection> onlineUsers;
     private final ConcurrentHashMap<String, ChatRoom> chatRooms;
+    private final ConcurrentHashMap<String, Set<String>> userRooms; // 用户 -> 所在聊天室名称的反向索引
+    @Getter(AccessLevel.NONE)
+    private final Map<String, ClientConnection> onlineUsersView; // 在线用户的只读视图，只创建一次
+    @Getter(AccessLevel.NONE)
+    private final Map<String, ChatRoom> chatRoomsView; // 聊天室的只读视图，只创建一次
     private final ExecutorService executorService;
+    private final OutboundStats outboundStats = new OutboundStats();
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final LoadShedder loadShedder;
+    private final PresenceTracker presence;
+    private final RoomDirectory roomDirectory;
+    @Getter(AccessLevel.NONE)
+    private final RoomIndex roomIndex = new RoomIndex(); // 按名称、人数和活跃时间排序的房间索引
 
     @Setter
     private ServerSocket serverSocket;
 
+    @Setter
+    private RoomLogStore roomLogStore; // 为 null 时聊天室历史只保存在内存中
+
     private final AtomicBoolean running;
 
     public ServerState(int port) {
+        this(port, Executors.newCachedThreadPool());
+    }
+
+    /**
+     * 使用指定的线程池执行客户端处理器（平台线程池或虚拟线程）
+     */
+    public ServerState(int port, ExecutorService executorService) {
+        this(port, executorService, new LoadShedder(ServerConfig.builder().build()));
+    }
+
+    /**
+     * 使用指定的线程池和降载策略
+     */
+    public ServerState(int port, ExecutorService executorService, LoadShedder loadShedder) {
         this.port = port;
+        this.loadShedder = loadShedder;
         this.onlineUsers = new ConcurrentHashMap<>();
         this.chatRooms = new ConcurrentHashMap<>();
-        this.executorService = Executors.newCachedThreadPool();
+        this.userRooms = new ConcurrentHashMap<>();
+        this.onlineUsersView = Collections.unmodifiableMap(onlineUsers);
+        this.chatRoomsView = Collections.unmodifiableMap(chatRooms);
+        this.executorService = executorService;
         this.running = new AtomicBoolean(false);
+        this.presence = new PresenceTracker(this);
+        this.roomDirectory = new RoomDirectory(this);
+        metrics.gauge("onlineUsers", onlineUsers::size);
+        metrics.gauge("rooms", chatRooms::size);
     }
 
     public boolean isRunning() {
@@ -59,27 +104,49 @@ public class ServerState {
     /**
      * 添加在线用户
      */
-    public boolean addUser(String username, ClientHandler handler) {
+    public boolean addUser(String username, ClientConnection handler) {
         if (username == null || handler == null) {
             return false;
         }
-        return onlineUsers.putIfAbsent(username, handler) == null;
+        if (onlineUsers.putIfAbsent(username, handler) != null) {
+            return false;
+        }
+        presence.online(username);
+        return true;
     }
 
     /**
      * 移除在线用户并获取其处理器
      */
-    public Optional<ClientHandler> removeUser(String username) {
+    public Optional<ClientConnection> removeUser(String username) {
         if (username == null) {
             return Optional.empty();
         }
-        return Optional.ofNullable(onlineUsers.remove(username));
+        ClientConnection removed = onlineUsers.remove(username);
+        if (removed != null) {
+            presence.offline(username);
+        }
+        return Optional.ofNullable(removed);
+    }
+
+    /**
+     * 只有用户名当前登记的仍是该连接时才移除
+     * 连接关闭时使用：旧连接的清理可能晚于同名用户的重新登录，不能移除新登录的会话
+     *
+     * @return true 如果该连接是登记的会话并已移除
+     */
+    public boolean removeUser(String username, ClientConnection connection) {
+        if (username == null || connection == null || !onlineUsers.remove(username, connection)) {
+            return false;
+        }
+        presence.offline(username);
+        return true;
     }
 
     /**
      * 获取用户处理器
      */
-    public Optional<ClientHandler> getClientHandler(String username) {
+    public Optional<ClientConnection> getClientConnection(String username) {
         if (username == null) {
             return Optional.empty();
         }
@@ -103,17 +170,174 @@ public class ServerState {
         if (roomName == null || room == null) {
             return false;
         }
-        return chatRooms.putIfAbsent(roomName, room) == null;
+        if (chatRooms.putIfAbsent(roomName, room) != null) {
+            return false;
+        }
+        roomIndex.add(room);
+        return true;
     }
 
     /**
-     * 移除聊天室
+     * 名称未被占用时创建并添加聊天室
+     * 房间只在名称空闲时才构造：打开房间日志、补建检索索引都有开销，名称已被占用时不会执行，
+     * 并发创建同名房间时也只有一个房间实例被构造
+     *
+     * @return 新建的聊天室，名称已被占用时为空
+     */
+    Optional<ChatRoom> createChatRoom(String roomName, Function<String, ChatRoom> factory) {
+        if (roomName == null) {
+            return Optional.empty();
+        }
+        boolean[] created = new boolean[1];
+        ChatRoom room = chatRooms.computeIfAbsent(roomName, name -> {
+            created[0] = true;
+            return factory.apply(name);
+        });
+        if (!created[0]) {
+            return Optional.empty();
+        }
+        roomIndex.add(room);
+        return Optional.of(room);
+    }
+
+    /**
+     * 移除聊天室，同时从反向索引中移除仍在房间中的成员
      */
     public Optional<ChatRoom> removeChatRoom(String roomName) {
         if (roomName == null) {
             return Optional.empty();
         }
-        return Optional.ofNullable(chatRooms.remove(roomName));
+        ChatRoom room = chatRooms.get(roomName);
+        if (room == null) {
+            return Optional.empty();
+        }
+        discardRoomHistory(room);
+        if (!chatRooms.remove(roomName, room)) {
+            return Optional.empty();
+        }
+        roomIndex.remove(room);
+        room.getMembers().forEach(username -> unindex(username, roomName));
+        return Optional.of(room);
+    }
+
+    /**
+     * 为新建的聊天室创建消息历史：配置了数据目录时使用持久化的房间日志，否则使用内存环形缓冲区
+     */
+    RoomHistory createRoomHistory(String roomName) {
+        if (roomLogStore != null) {
+            try {
+                return roomLogStore.open(roomName);
+            } catch (IOException e) {
+                log.error("打开聊天室 {} 的日志失败，历史只保存在内存中: {}", roomName, e.getMessage());
+            }
+        }
+        return new MessageHistory(ChatRoom.MAX_HISTORY_SIZE);
+    }
+
+    /**
+     * 删除被移除房间的持久化日志
+     * 在房间从映射中移除之前执行：此时同名房间还无法创建，新房间不会打开到这份旧日志
+     */
+    private void discardRoomHistory(ChatRoom room) {
+        if (roomLogStore != null && room.history() instanceof RoomLog roomLog) {
+            roomLogStore.discard(room.getName(), roomLog);
+        }
+    }
+
+    /**
+     * 移除指定的聊天室实例，名称已被新房间占用时不做任何操作
+     */
+    public boolean removeChatRoom(ChatRoom room) {
+        if (room == null || chatRooms.get(room.getName()) != room) {
+            return false;
+        }
+        discardRoomHistory(room);
+        if (!chatRooms.remove(room.getName(), room)) {
+            return false;
+        }
+        roomIndex.remove(room);
+        room.getMembers().forEach(username -> unindex(username, room.getName()));
+        return true;
+    }
+
+    /**
+     * 用户加入聊天室，同时维护用户到聊天室的反向索引
+     * 成员变更都应通过该方法和 {@link #leaveRoom}，而不是直接调用 ChatRoom 的方法
+     *
+     * @return true 如果加入成功，false 如果用户已在房间中、房间已销毁或用户已经下线
+     */
+    public boolean joinRoom(String username, ChatRoom room) {
+        ClientConnection connection = onlineUsers.get(username);
+        if (connection == null || !room.addMember(username, connection)) {
+            return false;
+        }
+        userRooms.compute(username, (key, rooms) -> {
+            Set<String> result = rooms != null ? rooms : ConcurrentHashMap.newKeySet();
+            result.add(room.getName());
+            return result;
+        });
+        roomIndex.membersChanged(room);
+        // 与断开连接并发时，断开的清理可能已经执行完毕（同名用户可能已经重新登录），此时撤销本次加入
+        if (onlineUsers.get(username) != connection) {
+            leaveRoom(username, room);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 用户离开聊天室，同时维护反向索引
+     *
+     * @return true 如果离开成功，false 如果用户不在房间中
+     */
+    public boolean leaveRoom(String username, ChatRoom room) {
+        if (!room.removeMember(username)) {
+            return false;
+        }
+        // SHARED 模式下同名用户的新连接可能紧接着重新加入，此时反向索引中的房间已属于新的成员关系，不能删除
+        userRooms.computeIfPresent(username, (key, rooms) -> {
+            if (!room.hasMember(username)) {
+                rooms.remove(room.getName());
+            }
+            return rooms.isEmpty() ? null : rooms;
+        });
+        roomIndex.membersChanged(room);
+        return true;
+    }
+
+    /**
+     * 房间收到新消息后更新活跃时间排序
+     */
+    void roomTouched(ChatRoom room) {
+        roomIndex.touched(room);
+    }
+
+    /**
+     * 分页查询聊天室目录
+     *
+     * @param prefix 名称前缀，null 或空字符串表示不过滤
+     * @param cursor 上一页返回的游标，null 表示第一页
+     */
+    RoomIndex.Page queryRooms(String prefix, RoomIndex.Sort sort, String cursor, int limit) {
+        return roomIndex.query(prefix, sort, cursor, limit);
+    }
+
+    private void unindex(String username, String roomName) {
+        userRooms.computeIfPresent(username, (key, rooms) -> {
+            rooms.remove(roomName);
+            return rooms.isEmpty() ? null : rooms;
+        });
+    }
+
+    /**
+     * 获取用户所在的所有聊天室名称
+     */
+    public Set<String> getUserRooms(String username) {
+        if (username == null) {
+            return Set.of();
+        }
+        Set<String> rooms = userRooms.get(username);
+        return rooms == null ? Set.of() : Set.copyOf(rooms);
     }
 
     /**
@@ -128,17 +352,26 @@ public class ServerState {
     }
 
     /**
-     * 获取所有聊天室的不可变视图
+     * 获取所有聊天室的只读视图
+     * 视图直接反映当前状态而不是快照，遍历是弱一致的；需要快照时由调用方自行复制
      */
     public Map<String, ChatRoom> getChatRooms() {
-        return Map.copyOf(chatRooms);
+        return chatRoomsView;
+    }
+
+    /**
+     * 获取所有在线用户的只读视图
+     * 视图直接反映当前状态而不是快照，遍历是弱一致的；需要快照时由调用方自行复制
+     */
+    public Map<String, ClientConnection> getOnlineUsers() {
+        return onlineUsersView;
     }
 
     /**
-     * 获取所有在线用户的不可变视图
+     * 遍历所有在线连接，不复制在线用户表
      */
-    public Map<String, ClientHandler> getOnlineUsers() {
-        return Map.copyOf(onlineUsers);
+    public void forEachConnection(Consumer<ClientConnection> action) {
+        onlineUsers.values().forEach(action);
     }
 
     /**
@@ -146,9 +379,12 @@ public class ServerState {
      */
     public void shutdown() {
         if (running.compareAndSet(true, false)) {
-            onlineUsers.values().forEach(ClientHandler::close);
+            onlineUsers.values().forEach(ClientConnection::close);
             onlineUsers.clear();
             chatRooms.clear();
+            roomIndex.clear();
+            userRooms.clear();
+            presence.close();
             executorService.shutdown();
         }
     }
@@ -0,0 +1,93 @@
+package com.example.chat.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 全文检索分词器
+ * 字母和数字按连续的单词切分并转为小写；中日韩文字没有空格分隔，连续的一段文字按二元组（bigram）切分。
+ * 建索引时额外记录每个单字，使单字查询也能命中；查询时两个字以上的片段只使用二元组，选择性更高
+ */
+final class TextTokenizer {
+
+    private TextTokenizer() {
+    }
+
+    /**
+     * 建索引使用的词项（去重）
+     */
+    static Set<String> indexTokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        tokenize(text, tokens, true);
+        return tokens;
+    }
+
+    /**
+     * 查询使用的词项（去重），所有词项都出现的消息才算命中
+     */
+    static List<String> queryTokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        tokenize(text, tokens, false);
+        return new ArrayList<>(tokens);
+    }
+
+    private static void tokenize(String text, Set<String> out, boolean unigrams) {
+        if (text == null) {
+            return;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        StringBuilder cjk = new StringBuilder();
+        int i = 0;
+        while (i < normalized.length()) {
+            int codePoint = normalized.codePointAt(i);
+            if (isCjk(codePoint)) {
+                flushWord(word, out);
+                cjk.appendCodePoint(codePoint);
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                flushCjk(cjk, out, unigrams);
+                word.appendCodePoint(codePoint);
+            } else {
+                flushWord(word, out);
+                flushCjk(cjk, out, unigrams);
+            }
+            i += Character.charCount(codePoint);
+        }
+        flushWord(word, out);
+        flushCjk(cjk, out, unigrams);
+    }
+
+    private static void flushWord(StringBuilder word, Set<String> out) {
+        if (word.length() > 0) {
+            out.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static void flushCjk(StringBuilder run, Set<String> out, boolean unigrams) {
+        if (run.length() == 0) {
+            return;
+        }
+        int[] codePoints = run.codePoints().toArray();
+        if (codePoints.length == 1 || unigrams) {
+            for (int codePoint : codePoints) {
+                out.add(new String(Character.toChars(codePoint)));
+            }
+        }
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            out.add(new String(codePoints, i, 2));
+        }
+        run.setLength(0);
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
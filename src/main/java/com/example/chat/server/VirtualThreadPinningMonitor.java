@@ -0,0 +1,179 @@
+package com.example.chat.server;
+
+import com.example.chat.common.FramedMessageStream;
+import com.example.chat.common.Message;
+import com.example.chat.common.MessageStream;
+import com.example.chat.common.MessageType;
+import com.example.chat.common.ObjectMessageStream;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 虚拟线程钉住（pinning）检测
+ * 通过 JFR 的 jdk.VirtualThreadPinned 事件监控虚拟线程是否在阻塞时占住了载体线程。
+ * 启动时先用与 ClientHandler 相同的路径（ReentrantLock 保护写出、阻塞读取消息流）跑一次探测并输出报告，
+ * 之后继续监控运行期间超过阈值的钉住事件并记录警告日志
+ */
+@Slf4j
+class VirtualThreadPinningMonitor implements AutoCloseable {
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final Duration RUNTIME_THRESHOLD = Duration.ofMillis(20);
+    private static final int PROBE_MESSAGES = 50;
+
+    private final RecordingStream recording = new RecordingStream();
+    private final Map<String, AtomicInteger> pinnedSites = new ConcurrentHashMap<>();
+    private final AtomicInteger pinnedCount = new AtomicInteger();
+    private volatile CountDownLatch flushLatch;
+    private volatile boolean probing = true;
+
+    /**
+     * 启动监控并执行探测，返回探测期间观察到的钉住事件数
+     */
+    int start() {
+        recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::onPinned);
+        recording.onFlush(() -> {
+            CountDownLatch latch = flushLatch;
+            if (latch != null) {
+                latch.countDown();
+            }
+        });
+        recording.startAsync();
+
+        try {
+            runProbe();
+            awaitFlush();
+        } catch (Exception e) {
+            log.warn("虚拟线程钉住探测失败: {}", e.getMessage());
+        }
+        probing = false;
+        // 探测结束后提高阈值，只记录运行期间较长的钉住
+        recording.enable(PINNED_EVENT).withThreshold(RUNTIME_THRESHOLD);
+        report();
+        return pinnedCount.get();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        if (!probing && event.getDuration().compareTo(RUNTIME_THRESHOLD) < 0) {
+            return;
+        }
+        String site = topFrame(event);
+        pinnedSites.computeIfAbsent(site, k -> new AtomicInteger()).incrementAndGet();
+        pinnedCount.incrementAndGet();
+        if (!probing) {
+            log.warn("虚拟线程被钉住 {} ms: {}", event.getDuration().toMillis(), site);
+        }
+    }
+
+    private static String topFrame(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "<unknown>";
+        }
+        List<RecordedFrame> frames = event.getStackTrace().getFrames();
+        for (RecordedFrame frame : frames) {
+            String type = frame.getMethod().getType().getName();
+            if (!type.startsWith("java.") && !type.startsWith("jdk.")) {
+                return type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+            }
+        }
+        return frames.isEmpty() ? "<unknown>" : frames.get(0).getMethod().getType().getName();
+    }
+
+    /**
+     * 在虚拟线程上通过回环连接模拟一次收发：
+     * 读取端阻塞在 readMessage，写入端在 ReentrantLock 保护下写出并刷新
+     */
+    private void runProbe() throws Exception {
+        probeStream(false);
+        probeStream(true);
+    }
+
+    private void probeStream(boolean framed) throws Exception {
+        try (ServerSocket listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread reader = Thread.ofVirtual().name("pinning-probe-reader").start(() -> {
+                try (Socket socket = listener.accept()) {
+                    MessageStream stream = framed
+                            ? FramedMessageStream.accept(skipMagic(socket), socket.getOutputStream())
+                            : new ObjectMessageStream(socket.getInputStream(), socket.getOutputStream());
+                    for (int i = 0; i < PROBE_MESSAGES; i++) {
+                        stream.readMessage();
+                    }
+                } catch (IOException | ClassNotFoundException e) {
+                    log.debug("探测读取端结束: {}", e.getMessage());
+                }
+            });
+
+            Thread writer = Thread.ofVirtual().name("pinning-probe-writer").start(() -> {
+                ReentrantLock writeLock = new ReentrantLock();
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), listener.getLocalPort())) {
+                    MessageStream stream = framed
+                            ? FramedMessageStream.connect(socket)
+                            : new ObjectMessageStream(socket.getInputStream(), socket.getOutputStream());
+                    for (int i = 0; i < PROBE_MESSAGES; i++) {
+                        // 让读取端真正阻塞在读上，再写出下一条
+                        Thread.sleep(1);
+                        writeLock.lock();
+                        try {
+                            stream.writeMessage(Message.createSystemMessage(MessageType.ERROR_MESSAGE, "probe"));
+                        } finally {
+                            writeLock.unlock();
+                        }
+                    }
+                } catch (IOException e) {
+                    log.debug("探测写入端结束: {}", e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+            reader.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    private static InputStream skipMagic(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        in.readNBytes(4);
+        return in;
+    }
+
+    /**
+     * JFR 事件按批次刷新，等待两次刷新以确保探测期间的事件都已送达
+     */
+    private void awaitFlush() throws InterruptedException {
+        flushLatch = new CountDownLatch(2);
+        flushLatch.await(5, TimeUnit.SECONDS);
+    }
+
+    private void report() {
+        if (pinnedCount.get() == 0) {
+            log.info("虚拟线程钉住检测：writeLock 写出和阻塞读取路径均未钉住载体线程");
+            System.out.println("* 虚拟线程钉住检测: 通过");
+        } else {
+            log.warn("虚拟线程钉住检测：探测期间发现 {} 次钉住", pinnedCount.get());
+            pinnedSites.forEach((site, count) -> log.warn("  {} 次: {}", count.get(), site));
+            System.out.println("* 虚拟线程钉住检测: 发现 " + pinnedCount.get() + " 次钉住，详见日志");
+        }
+    }
+
+    @Override
+    public void close() {
+        recording.close();
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.chat.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryMessageCodecTest {
+
+    private static Message roundTrip(Message message) throws IOException {
+        byte[] frame = BinaryMessageCodec.encodeFrame(message);
+        return BinaryMessageCodec.decode(frame, FrameCodec.HEADER_LENGTH, frame.length - FrameCodec.HEADER_LENGTH);
+    }
+
+    @Test
+    void roundTripsAllFieldsAndDataShapes() throws IOException {
+        Message history = Message.createRoomMessage("你好 hello", "alice", "r1");
+        Message message = Message.builder()
+                .type(MessageType.ROOM_HISTORY_PAGE_RESPONSE)
+                .content("内容")
+                .sender("SERVER")
+                .receiver("bob")
+                .roomName("r1")
+                .timestamp(new Date(1234567890123L))
+                .data(Map.of(
+                        "messages", List.of(history),
+                        "before", 42L,
+                        "limit", -7,
+                        "users", List.of("a", "b"),
+                        "mixed", List.of("x", 1, true),
+                        "when", new Date(99L),
+                        "empty", Map.of()))
+                .build();
+
+        Message decoded = roundTrip(message);
+
+        assertEquals(message.getType(), decoded.getType());
+        assertEquals(message.getContent(), decoded.getContent());
+        assertEquals(message.getSender(), decoded.getSender());
+        assertEquals(message.getReceiver(), decoded.getReceiver());
+        assertEquals(message.getRoomName(), decoded.getRoomName());
+        assertEquals(message.getTimestamp(), decoded.getTimestamp());
+        Map<?, ?> data = (Map<?, ?>) decoded.getData();
+        assertEquals(42L, data.get("before"));
+        assertEquals(-7, data.get("limit"));
+        assertEquals(List.of("a", "b"), data.get("users"));
+        assertEquals(List.of("x", 1, true), data.get("mixed"));
+        assertEquals(new Date(99L), data.get("when"));
+        assertEquals(Map.of(), data.get("empty"));
+        Message nested = (Message) ((List<?>) data.get("messages")).get(0);
+        assertEquals(history.getContent(), nested.getContent());
+        assertEquals(history.getTimestamp(), nested.getTimestamp());
+    }
+
+    @Test
+    void encodesSetsAsLists() throws IOException {
+        Message message = Message.builder()
+                .type(MessageType.ROOM_INFO_RESPONSE)
+                .data(Map.of("members", new LinkedHashSet<>(List.of("a", "b"))))
+                .build();
+
+        assertEquals(List.of("a", "b"), ((Map<?, ?>) roundTrip(message).getData()).get("members"));
+    }
+
+    @Test
+    void rejectsUnsupportedDataInsteadOfSerializing() {
+        Message message = Message.builder().type(MessageType.ERROR_MESSAGE).data(new StringBuilder("x")).build();
+
+        assertThrows(IOException.class, () -> BinaryMessageCodec.encodeFrame(message));
+    }
+
+    @Test
+    void rejectsUnknownTags() {
+        // 类型 ERROR_MESSAGE，只有 data，标签 15（原 Java 序列化标签）
+        byte[] payload = { (byte) (MessageType.ERROR_MESSAGE.ordinal() + 1), 1 << 4, 15, 0 };
+
+        assertThrows(IOException.class, () -> BinaryMessageCodec.decode(payload, 0, payload.length));
+    }
+
+    @Test
+    void rejectsDeeplyNestedFramesWithoutOverflowingTheStack() {
+        int depth = 200_000;
+        byte[] payload = new byte[2 + depth * 2 + 1];
+        payload[0] = (byte) (MessageType.ERROR_MESSAGE.ordinal() + 1);
+        payload[1] = 1 << 4;
+        for (int i = 0; i < depth; i++) {
+            payload[2 + i * 2] = 7; // TAG_LIST
+            payload[3 + i * 2] = 1; // 一个元素
+        }
+        payload[payload.length - 1] = 0; // TAG_NULL
+
+        assertThrows(IOException.class, () -> BinaryMessageCodec.decode(payload, 0, payload.length));
+    }
+
+    @Test
+    void acceptsNestingUpToTheLimit() throws IOException {
+        Object value = "leaf";
+        for (int i = 0; i < BinaryMessageCodec.MAX_DEPTH - 1; i++) {
+            List<Object> list = new ArrayList<>();
+            list.add(value);
+            list.add(0);
+            value = list;
+        }
+        Message message = Message.builder().type(MessageType.ERROR_MESSAGE).data(value).build();
+
+        assertEquals(value, roundTrip(message).getData());
+    }
+
+    @Test
+    void refusesToEncodeNestingBeyondTheLimit() {
+        Object value = "leaf";
+        for (int i = 0; i <= BinaryMessageCodec.MAX_DEPTH; i++) {
+            value = List.of(value, 0);
+        }
+        Message message = Message.builder().type(MessageType.ERROR_MESSAGE).data(value).build();
+
+        assertThrows(IOException.class, () -> BinaryMessageCodec.encodeFrame(message));
+    }
+}
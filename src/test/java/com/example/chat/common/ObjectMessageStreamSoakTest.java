@@ -0,0 +1,82 @@
+package com.example.chat.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 长连接浸泡测试：同一条旧版对象流连接上发送一百万条房间消息，堆内存不随消息数增长
+ * 不定期 reset 时两端的句柄表会保留每一条消息，这里的增长会达到数百 MB
+ */
+class ObjectMessageStreamSoakTest {
+    private static final int MESSAGES = 1_000_000;
+    private static final int WARM_UP = 50_000;
+    private static final long MAX_HEAP_GROWTH = 32L * 1024 * 1024;
+
+    @Test
+    void heapStaysFlatOverAMillionMessages() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+                Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+                Socket accepted = server.accept()) {
+            ObjectMessageStream[] receiver = new ObjectMessageStream[1];
+            Thread opener = new Thread(() -> {
+                try {
+                    receiver[0] = new ObjectMessageStream(accepted.getInputStream(), accepted.getOutputStream());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            opener.start();
+            ObjectMessageStream sender = new ObjectMessageStream(client.getInputStream(), client.getOutputStream());
+            opener.join();
+
+            AtomicLong received = new AtomicLong();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread reader = new Thread(() -> {
+                try {
+                    for (int i = 0; i < MESSAGES; i++) {
+                        receiver[0].readMessage();
+                        received.incrementAndGet();
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            });
+            reader.start();
+
+            long baseline = 0;
+            for (int i = 0; i < MESSAGES; i++) {
+                sender.write(Message.createRoomMessage("soak message " + i, "alice", "soak"));
+                if (i == WARM_UP) {
+                    sender.flush();
+                    baseline = usedHeapAfterGc();
+                }
+            }
+            sender.flush();
+            reader.join();
+            long growth = usedHeapAfterGc() - baseline;
+
+            assertNull(failure.get());
+            assertEquals(MESSAGES, received.get());
+            assertTrue(growth < MAX_HEAP_GROWTH, "heap grew by " + growth / 1024 + " KB");
+        }
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
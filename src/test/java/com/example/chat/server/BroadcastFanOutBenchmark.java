@@ -0,0 +1,137 @@
+package com.example.chat.server;
+
+import com.example.chat.common.EncodedMessage;
+import com.example.chat.common.FrameCodec;
+import com.example.chat.common.Message;
+import com.example.chat.common.WireCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 房间广播扇出的每个接收者开销：同一条房间消息经 {@link ServerMessageProcessor} 广播给房间内所有成员，
+ * 对比共享预编码帧（每个接收者只复制一次帧）与每个接收者各自编码一次。
+ * 成员是不做网络 I/O 的连接，只把帧复制到自己的缓冲区，测到的是广播路径本身的 CPU 开销。
+ * 耗时较长，默认跳过：mvn test -Dtest=BroadcastFanOutBenchmark -Dchat.benchmarks=true
+ */
+@EnabledIfSystemProperty(named = "chat.benchmarks", matches = "true")
+class BroadcastFanOutBenchmark {
+    private static final int[] ROOM_SIZES = { 10, 100, 2000 };
+    private static final int RECIPIENTS_PER_ROUND = 1_000_000; // 每轮广播的接收者总数，房间越大消息越少
+    private static final int WARM_UP_ROUNDS = 2;
+
+    @Test
+    void perRecipientCost() {
+        for (WireCodec codec : WireCodec.values()) {
+            for (int roomSize : ROOM_SIZES) {
+                double shared = measure(roomSize, codec, true);
+                double perRecipient = measure(roomSize, codec, false);
+                System.out.printf(Locale.ROOT, "%-6s room=%4d  shared frame %7.1f ns/recipient  encode per recipient %7.1f ns/recipient%n",
+                        codec, roomSize, shared, perRecipient);
+                if (roomSize >= 100) {
+                    assertTrue(shared < perRecipient, "共享帧应比逐个编码快");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 每个接收者的平均耗时（纳秒）
+     */
+    private static double measure(int roomSize, WireCodec codec, boolean sharedFrame) {
+        ServerState state = new ServerState(0);
+        ServerMessageProcessor processor = new ServerMessageProcessor(state);
+        String room = "bench";
+        SinkConnection sender = null;
+        for (int i = 0; i < roomSize; i++) {
+            SinkConnection connection = new SinkConnection(state, processor, codec, sharedFrame);
+            if (i == 0) {
+                sender = connection;
+            }
+            String username = "user" + i;
+            processor.processLogin(Message.createLoginRequest(username), connection);
+            processor.processMessage(i == 0
+                    ? Message.createCreateRoomRequest(room, username, "")
+                    : Message.createJoinRoomRequest(room, username, ""), connection);
+        }
+
+        int messages = RECIPIENTS_PER_ROUND / roomSize;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round <= WARM_UP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < messages; i++) {
+                processor.processMessage(Message.createRoomMessage("fan-out benchmark message " + i, "user0", room),
+                        sender);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        state.getExecutorService().shutdownNow();
+        return (double) best / ((long) messages * roomSize);
+    }
+
+    /**
+     * 不做网络 I/O 的连接：把每条消息的帧复制到一个循环使用的缓冲区，模拟写入套接字缓冲区
+     */
+    private static final class SinkConnection extends ClientConnection {
+        private final WireCodec codec;
+        private final boolean sharedFrame;
+        private final byte[] sink = new byte[64 * 1024];
+        private int position;
+
+        SinkConnection(ServerState state, ServerMessageProcessor processor, WireCodec codec, boolean sharedFrame) {
+            super(state, processor);
+            this.codec = codec;
+            this.sharedFrame = sharedFrame;
+            running.set(true);
+        }
+
+        @Override
+        public void sendMessage(Message message) {
+            try {
+                copy(FrameCodec.encode(message, codec));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void sendEncoded(EncodedMessage message, boolean droppable) {
+            if (!sharedFrame) {
+                sendMessage(message.getMessage());
+                return;
+            }
+            try {
+                copy(message.frame(codec));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void copy(byte[] frame) {
+            if (position + frame.length > sink.length) {
+                position = 0;
+            }
+            System.arraycopy(frame, 0, sink, position, Math.min(frame.length, sink.length));
+            position += frame.length;
+        }
+
+        @Override
+        public int getQueuedMessages() {
+            return 0;
+        }
+
+        @Override
+        public long getQueuedBytes() {
+            return 0;
+        }
+
+        @Override
+        protected void closeTransport() {
+        }
+    }
+}
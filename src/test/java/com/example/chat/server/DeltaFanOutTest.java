@@ -0,0 +1,72 @@
+package com.example.chat.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeltaFanOutTest {
+    private final DeltaFanOut fanOut = new DeltaFanOut();
+
+    @Test
+    void flushReturnsWhileAnotherThreadIsSendingAndThatThreadSendsTheRest() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> sent = new CopyOnWriteArrayList<>();
+        fanOut.add(() -> {
+            entered.countDown();
+            await(release);
+            sent.add(1);
+        });
+        CompletableFuture<Void> first = CompletableFuture.runAsync(fanOut::flush);
+        assertTrue(entered.await(5, TimeUnit.SECONDS), "第一次广播应已开始");
+
+        fanOut.add(() -> sent.add(2));
+        CompletableFuture.runAsync(fanOut::flush).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(), sent);
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(1, 2), sent);
+    }
+
+    @Test
+    void concurrentAddsAreSentOnceInQueueOrder() throws Exception {
+        Object versionLock = new Object();
+        long[] version = { 0 };
+        List<Long> sent = new ArrayList<>(); // 同一时刻只有一个线程发送
+        List<CompletableFuture<Void>> publishers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            publishers.add(CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 2500; i++) {
+                    synchronized (versionLock) {
+                        long assigned = version[0]++;
+                        fanOut.add(() -> sent.add(assigned));
+                    }
+                    fanOut.flush();
+                }
+            }));
+        }
+        CompletableFuture.allOf(publishers.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        assertEquals(10_000, sent.size());
+        for (int i = 0; i < sent.size(); i++) {
+            assertEquals(i, sent.get(i));
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
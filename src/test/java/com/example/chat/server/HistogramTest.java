@@ -0,0 +1,121 @@
+package com.example.chat.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistogramTest {
+
+    @Test
+    void emptyHistogram() {
+        Histogram histogram = new Histogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int value = 0; value < 8; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(8, histogram.getCount());
+        assertEquals(28, histogram.getSum());
+        assertEquals(3, histogram.getPercentile(50));
+        assertEquals(7, histogram.getPercentile(100));
+        assertEquals(0, histogram.getPercentile(0));
+    }
+
+    @Test
+    void percentilesOfAUniformRange() {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 10_000; value++) {
+            histogram.record(value);
+        }
+
+        assertWithin(5_000, histogram.getPercentile(50));
+        assertWithin(9_000, histogram.getPercentile(90));
+        assertWithin(9_900, histogram.getPercentile(99));
+        assertEquals(10_000, histogram.getPercentile(100));
+        assertEquals(10_000, histogram.getMax());
+        assertEquals(5_000.5, histogram.getMean(), 1e-9);
+    }
+
+    @Test
+    void percentilesMatchSortedSamplesWithinBucketError() {
+        Random random = new Random(7);
+        Histogram histogram = new Histogram();
+        long[] samples = new long[100_000];
+        for (int i = 0; i < samples.length; i++) {
+            // 对数分布，覆盖从纳秒到秒的跨度
+            samples[i] = (long) Math.exp(random.nextDouble() * Math.log(1e9));
+            histogram.record(samples[i]);
+        }
+        Arrays.sort(samples);
+
+        for (double percentile : new double[] { 1, 10, 50, 90, 99, 99.9 }) {
+            long exact = samples[(int) Math.ceil(samples.length * percentile / 100) - 1];
+            assertWithin(exact, histogram.getPercentile(percentile));
+        }
+        assertEquals(samples[samples.length - 1], histogram.getPercentile(100));
+    }
+
+    @Test
+    void reportsBucketUpperBoundCappedAtMax() {
+        Histogram histogram = new Histogram();
+        histogram.record(1000); // 桶 [960, 1023]
+
+        assertEquals(1000, histogram.getPercentile(50)); // 上界被最大值截断
+        histogram.record(1);
+        histogram.record(2000);
+        assertEquals(1023, histogram.getPercentile(60));
+    }
+
+    @Test
+    void clampsNegativeValuesAndHandlesLongMax() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+    }
+
+    @Test
+    void concurrentRecordingLosesNothing() throws InterruptedException {
+        Histogram histogram = new Histogram();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(i % 1000);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(800_000, histogram.getCount());
+        assertEquals(8L * 100 * (999 * 1000 / 2), histogram.getSum());
+        assertEquals(999, histogram.getPercentile(100));
+    }
+
+    /**
+     * 近似值为真实值所在桶的上界：不小于真实值，且相对误差不超过 12.5%
+     */
+    private static void assertWithin(long exact, long approximate) {
+        assertTrue(approximate >= exact && approximate <= exact + exact / 8,
+                "expected ~" + exact + " but was " + approximate);
+    }
+}
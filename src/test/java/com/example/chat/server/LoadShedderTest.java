@@ -0,0 +1,37 @@
+package com.example.chat.server;
+
+import com.example.chat.common.Message;
+import com.example.chat.common.MessageType;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadShedderTest {
+
+    @Test
+    void resyncSnapshotsAreServedWhileListsAreShed() throws InterruptedException {
+        LoadShedder shedder = new LoadShedder(ServerConfig.builder().shedTargetMillis(0).shedIntervalMillis(500).build());
+        ServerState state = new ServerState(0, Executors.newCachedThreadPool(), shedder);
+        ServerMessageProcessor processor = new ServerMessageProcessor(state);
+        RecordingConnection client = new RecordingConnection(state, processor);
+        assertTrue(processor.processLogin(Message.createLoginRequest("alice"), client));
+
+        // 第一个周期内积压超过目标值，周期结束后进入 SHED_LISTS
+        shedder.record(System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+        Thread.sleep(600);
+        assertEquals(LoadShedder.Level.SHED_LISTS, shedder.getLevel());
+
+        processor.processMessage(Message.createUserListRequest("alice"), client);
+        processor.processMessage(Message.createPresenceSnapshotRequest("alice"), client);
+        processor.processMessage(Message.createRoomDirectoryRequest("alice"), client);
+
+        assertEquals(1, client.received(MessageType.RATE_LIMITED).size());
+        assertEquals(1, client.received(MessageType.PRESENCE_SNAPSHOT).size());
+        assertEquals(1, client.received(MessageType.ROOM_DIRECTORY_SNAPSHOT).size());
+        assertEquals(1, shedder.getShedRequests());
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.chat.server;
+
+import com.example.chat.common.BinaryMessageCodec;
+import com.example.chat.common.FrameCodec;
+import com.example.chat.common.Message;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LogSegmentTest {
+    private static final int CAPACITY = 1024 * 1024;
+    private static final long BASE = 1;
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 向新段追加 count 条消息，返回每条记录在 .log 文件中的起始位置，最后一项为写入的结束位置
+     */
+    private static List<Integer> append(LogSegment segment, int from, int count, String padding) throws IOException {
+        List<Integer> positions = new ArrayList<>();
+        int position = 0;
+        for (int i = from; i < from + count; i++) {
+            byte[] frame = BinaryMessageCodec.encodeFrame(Message.createRoomMessage("m" + i + padding, "alice", "r1"));
+            int length = frame.length - FrameCodec.HEADER_LENGTH;
+            positions.add(position);
+            segment.append(segment.getNextSequence(), frame, FrameCodec.HEADER_LENGTH, length);
+            position += LogSegment.RECORD_HEADER_LENGTH + length;
+        }
+        positions.add(position);
+        return positions;
+    }
+
+    private static List<String> readAll(LogSegment segment) throws Exception {
+        List<Message> messages = new ArrayList<>();
+        segment.read(BASE, segment.getNextSequence(), messages);
+        return messages.stream().map(Message::getContent).toList();
+    }
+
+    private static List<String> expected(int from, int to, String padding) {
+        List<String> contents = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            contents.add("m" + i + padding);
+        }
+        return contents;
+    }
+
+    /**
+     * 在 .log 文件的指定位置写入字节，模拟只有部分页落盘的撕裂写入
+     */
+    private void overwrite(int position, byte[] bytes) throws IOException {
+        Path file = dir.resolve(LogSegment.fileName(BASE, LogSegment.LOG_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), position);
+        }
+    }
+
+    @Test
+    void reopensCleanSegment() throws Exception {
+        LogSegment segment = LogSegment.create(dir, BASE, CAPACITY);
+        append(segment, 1, 10, "");
+        segment.close();
+
+        LogSegment reopened = LogSegment.open(dir, BASE);
+
+        assertEquals(11, reopened.getNextSequence());
+        assertEquals(expected(1, 10, ""), readAll(reopened));
+    }
+
+    @Test
+    void dropsTailRecordWithTornPayload() throws Exception {
+        LogSegment segment = LogSegment.create(dir, BASE, CAPACITY);
+        List<Integer> positions = append(segment, 1, 10, "");
+        int last = positions.get(9);
+        int length = positions.get(10) - last - LogSegment.RECORD_HEADER_LENGTH;
+        segment.close();
+        // 长度字段已落盘，负载的后半部分没有
+        overwrite(last + LogSegment.RECORD_HEADER_LENGTH + length / 2, new byte[length - length / 2]);
+
+        LogSegment reopened = LogSegment.open(dir, BASE);
+
+        assertEquals(10, reopened.getNextSequence());
+        assertEquals(expected(1, 9, ""), readAll(reopened));
+    }
+
+    @Test
+    void dropsTailRecordWithTornHeader() throws Exception {
+        LogSegment segment = LogSegment.create(dir, BASE, CAPACITY);
+        List<Integer> positions = append(segment, 1, 10, "");
+        segment.close();
+        // 长度已落盘，序号没有
+        overwrite(positions.get(9) + 8, new byte[8]);
+
+        LogSegment reopened = LogSegment.open(dir, BASE);
+
+        assertEquals(10, reopened.getNextSequence());
+        assertEquals(expected(1, 9, ""), readAll(reopened));
+    }
+
+    @Test
+    void appendsCleanlyAfterRecovery() throws Exception {
+        LogSegment segment = LogSegment.create(dir, BASE, CAPACITY);
+        List<Integer> positions = append(segment, 1, 10, "");
+        segment.close();
+        overwrite(positions.get(9) + 4, new byte[] { 1, 2, 3, 4 }); // CRC 不匹配
+
+        LogSegment recovered = LogSegment.open(dir, BASE);
+        append(recovered, 10, 5, "-again");
+        recovered.close();
+        LogSegment reopened = LogSegment.open(dir, BASE);
+
+        List<String> contents = new ArrayList<>(expected(1, 9, ""));
+        contents.addAll(expected(10, 14, "-again"));
+        assertEquals(15, reopened.getNextSequence());
+        assertEquals(contents, readAll(reopened));
+    }
+
+    @Test
+    void discardsSparseIndexEntriesPastTheRecoveredEnd() throws Exception {
+        String padding = "x".repeat(500);
+        LogSegment segment = LogSegment.create(dir, BASE, CAPACITY);
+        List<Integer> positions = append(segment, 1, 200, padding); // 约 100KB，索引有二十多项
+        segment.close();
+        // 撕裂靠前的一条记录之后的尾部：这条记录之后的索引项都指向已丢弃的数据
+        int torn = 150;
+        overwrite(positions.get(torn - 1), new byte[positions.get(200) - positions.get(torn - 1)]);
+
+        LogSegment recovered = LogSegment.open(dir, BASE);
+        assertEquals(torn, recovered.getNextSequence());
+        assertEquals(expected(1, torn - 1, padding), readAll(recovered));
+
+        append(recovered, torn, 60, "-again");
+        recovered.close();
+        LogSegment reopened = LogSegment.open(dir, BASE);
+
+        List<String> contents = new ArrayList<>(expected(1, torn - 1, padding));
+        contents.addAll(expected(torn, torn + 59, "-again"));
+        assertEquals(torn + 60, reopened.getNextSequence());
+        assertEquals(contents, readAll(reopened));
+        List<Message> page = new ArrayList<>();
+        reopened.read(180, 185, page);
+        assertEquals(expected(180, 184, "-again"), page.stream().map(Message::getContent).toList());
+    }
+}
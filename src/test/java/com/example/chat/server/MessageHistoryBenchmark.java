@@ -0,0 +1,141 @@
+package com.example.chat.server;
+
+import com.example.chat.common.Message;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 房间历史在 1、4、16 个并发发送者下的追加吞吐量：环形缓冲区 {@link MessageHistory}
+ * 对比原来的 synchronizedList + remove(0) 实现。另有一个读者线程持续读取最近 30 条（加入房间时的回放），
+ * 同时统计读取次数，反映读者是否被写者阻塞。
+ * 每个配置先预热再取多轮中最好的一轮，方法与 JMH 的吞吐量模式相同，只是没有引入 JMH 依赖。
+ * 耗时较长，默认跳过：mvn test -Dtest=MessageHistoryBenchmark -Dchat.benchmarks=true
+ */
+@EnabledIfSystemProperty(named = "chat.benchmarks", matches = "true")
+class MessageHistoryBenchmark {
+    private static final int[] SENDERS = { 1, 4, 16 };
+    private static final int CAPACITY = ChatRoom.MAX_HISTORY_SIZE;
+    private static final int REPLAY_SIZE = 30;
+    private static final long ROUND_MILLIS = 500;
+    private static final int WARM_UP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 3;
+
+    @Test
+    void appendThroughput() throws InterruptedException {
+        for (int senders : SENDERS) {
+            long[] ring = measure(new MessageHistoryTarget(), senders);
+            long[] list = measure(new SynchronizedListHistory(), senders);
+            System.out.printf(Locale.ROOT,
+                    "senders=%2d  ring buffer %,12d appends/s %,10d reads/s  synchronized list %,12d appends/s %,10d reads/s%n",
+                    senders, ring[0], ring[1], list[0], list[1]);
+        }
+    }
+
+    /**
+     * @return 最好一轮的每秒追加次数和每秒读取次数
+     */
+    private static long[] measure(Target target, int senders) throws InterruptedException {
+        Message message = Message.createRoomMessage("benchmark", "alice", "bench");
+        long[] best = { 0, 0 };
+        for (int round = 0; round < WARM_UP_ROUNDS + MEASURED_ROUNDS; round++) {
+            LongAdder appends = new LongAdder();
+            LongAdder reads = new LongAdder();
+            AtomicBoolean stop = new AtomicBoolean();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < senders; i++) {
+                threads.add(new Thread(() -> {
+                    await(start);
+                    long n = 0;
+                    while (!stop.get()) {
+                        target.append(message);
+                        n++;
+                    }
+                    appends.add(n);
+                }));
+            }
+            threads.add(new Thread(() -> {
+                await(start);
+                long n = 0;
+                while (!stop.get()) {
+                    target.recent(REPLAY_SIZE);
+                    n++;
+                }
+                reads.add(n);
+            }));
+            threads.forEach(Thread::start);
+            long begin = System.nanoTime();
+            start.countDown();
+            Thread.sleep(ROUND_MILLIS);
+            stop.set(true);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            if (round >= WARM_UP_ROUNDS && appends.sum() / seconds > best[0]) {
+                best[0] = (long) (appends.sum() / seconds);
+                best[1] = (long) (reads.sum() / seconds);
+            }
+        }
+        return best;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Target {
+        void append(Message message);
+
+        List<Message> recent(int n);
+    }
+
+    private static final class MessageHistoryTarget implements Target {
+        private final MessageHistory history = new MessageHistory(CAPACITY);
+
+        @Override
+        public void append(Message message) {
+            history.append(message);
+        }
+
+        @Override
+        public List<Message> recent(int n) {
+            return history.recent(n);
+        }
+    }
+
+    /**
+     * 原来的实现：synchronized 的 addMessage 写入 synchronizedList，超出容量时 remove(0) 移动整个数组
+     */
+    private static final class SynchronizedListHistory implements Target {
+        private final List<Message> messages = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public synchronized void append(Message message) {
+            if (messages.size() >= CAPACITY) {
+                messages.remove(0);
+            }
+            messages.add(message);
+        }
+
+        @Override
+        public List<Message> recent(int n) {
+            synchronized (messages) {
+                int start = Math.max(0, messages.size() - n);
+                return new ArrayList<>(messages.subList(start, messages.size()));
+            }
+        }
+    }
+}
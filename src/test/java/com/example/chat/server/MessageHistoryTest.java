@@ -0,0 +1,82 @@
+package com.example.chat.server;
+
+import com.example.chat.common.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageHistoryTest {
+
+    private static MessageHistory historyWith(int capacity, int messages) {
+        MessageHistory history = new MessageHistory(capacity);
+        for (int i = 1; i <= messages; i++) {
+            assertEquals(i, history.append(Message.createRoomMessage("m" + i, "alice", "r1")));
+        }
+        return history;
+    }
+
+    private static List<String> contents(List<Message> messages) {
+        return messages.stream().map(Message::getContent).toList();
+    }
+
+    @Test
+    void emptyHistory() {
+        MessageHistory history = new MessageHistory(4);
+
+        assertTrue(history.recent(30).isEmpty());
+        assertEquals(1, history.firstSequence());
+        assertEquals(0, history.lastSequence());
+        assertNull(history.get(1));
+    }
+
+    @Test
+    void keepsOnlyTheNewestMessagesAfterWrappingAround() {
+        MessageHistory history = historyWith(4, 10);
+
+        assertEquals(7, history.firstSequence());
+        assertEquals(10, history.lastSequence());
+        assertEquals(List.of("m7", "m8", "m9", "m10"), contents(history.recent(30)));
+        assertEquals(List.of("m9", "m10"), contents(history.recent(2)));
+    }
+
+    @Test
+    void getReturnsOnlyRetainedSequences() {
+        MessageHistory history = historyWith(4, 10);
+
+        assertNull(history.get(0));
+        assertNull(history.get(6)); // 槽位已被 m10 覆盖
+        assertEquals("m7", history.get(7).getContent());
+        assertEquals("m10", history.get(10).getContent());
+        assertNull(history.get(11));
+    }
+
+    @Test
+    void pagesBackwardsFromACursor() {
+        MessageHistory history = historyWith(4, 10);
+
+        assertEquals(List.of("m7", "m8"), contents(history.before(9, 2)));
+        assertEquals(List.of("m7", "m8"), contents(history.before(9, 10))); // 更早的已被淘汰
+        assertTrue(history.before(7, 5).isEmpty());
+        assertTrue(history.before(3, 5).isEmpty());
+        assertEquals(List.of("m9", "m10"), contents(history.before(Long.MAX_VALUE, 2)));
+    }
+
+    @Test
+    void wrapsManyTimesAtCapacityBoundaries() {
+        MessageHistory history = historyWith(3, 3);
+        assertEquals(List.of("m1", "m2", "m3"), contents(history.recent(3)));
+
+        history.append(Message.createRoomMessage("m4", "alice", "r1"));
+        assertEquals(List.of("m2", "m3", "m4"), contents(history.recent(3)));
+
+        for (int i = 5; i <= 3001; i++) {
+            history.append(Message.createRoomMessage("m" + i, "alice", "r1"));
+        }
+        assertEquals(2999, history.firstSequence());
+        assertEquals(List.of("m2999", "m3000", "m3001"), contents(history.recent(5)));
+    }
+}
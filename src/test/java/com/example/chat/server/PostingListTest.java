@@ -0,0 +1,142 @@
+package com.example.chat.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PostingListTest {
+    private final long[] buffer = new long[PostingList.BLOCK_SIZE];
+
+    private List<Long> decodeAll(PostingList list) {
+        List<Long> sequences = new ArrayList<>();
+        int last = list.floorBlock(Long.MAX_VALUE);
+        for (int block = 0; block <= last; block++) {
+            int n = list.decodeBlock(block, buffer);
+            for (int i = 0; i < n; i++) {
+                sequences.add(buffer[i]);
+            }
+        }
+        return sequences;
+    }
+
+    private static PostingList of(List<Long> sequences) {
+        PostingList list = new PostingList();
+        sequences.forEach(list::add);
+        return list;
+    }
+
+    @Test
+    void roundTripsDeltasOfEveryVarintLength() {
+        // 差值覆盖 1 到 9 字节的 varint，以及跨块边界
+        List<Long> sequences = new ArrayList<>();
+        long value = 1;
+        for (int i = 0; i < 3 * PostingList.BLOCK_SIZE + 5; i++) {
+            sequences.add(value);
+            value += 1L << (i % 57);
+        }
+        PostingList list = of(sequences);
+
+        assertEquals(sequences.size(), list.size());
+        assertEquals(sequences, decodeAll(list));
+        Set<Long> present = new HashSet<>(sequences);
+        for (long sequence : sequences) {
+            assertTrue(list.contains(sequence, buffer));
+            assertEquals(present.contains(sequence + 1), list.contains(sequence + 1, buffer));
+        }
+    }
+
+    @Test
+    void smallDeltasTakeOneBytePerSequence() {
+        PostingList list = new PostingList();
+        for (long sequence = 1; sequence <= 1000; sequence++) {
+            list.add(sequence);
+        }
+
+        // 每块第一个序号记在跳表中，其余每个差值 1 字节
+        int blocks = (1000 + PostingList.BLOCK_SIZE - 1) / PostingList.BLOCK_SIZE;
+        assertEquals(1000 - blocks, list.byteSize());
+    }
+
+    @Test
+    void ignoresNonIncreasingSequences() {
+        PostingList list = of(List.of(5L, 9L));
+        list.add(9);
+        list.add(3);
+
+        assertEquals(List.of(5L, 9L), decodeAll(list));
+    }
+
+    @Test
+    void floorBlockFindsTheBlockContainingASequence() {
+        PostingList list = new PostingList();
+        for (long sequence = 10; sequence < 10 + 3 * PostingList.BLOCK_SIZE; sequence++) {
+            list.add(sequence);
+        }
+
+        assertEquals(-1, list.floorBlock(9));
+        assertEquals(0, list.floorBlock(10));
+        assertEquals(0, list.floorBlock(10 + PostingList.BLOCK_SIZE - 1));
+        assertEquals(1, list.floorBlock(10 + PostingList.BLOCK_SIZE));
+        assertEquals(2, list.floorBlock(Long.MAX_VALUE));
+    }
+
+    @Test
+    void retainFromDropsEvictedSequences() {
+        List<Long> sequences = new ArrayList<>();
+        Random random = new Random(42);
+        long value = 0;
+        for (int i = 0; i < 1000; i++) {
+            value += 1 + random.nextInt(300);
+            sequences.add(value);
+        }
+        PostingList list = of(sequences);
+        long first = sequences.get(517) - 1; // 落在块中间，且不等于任何序号
+
+        PostingList retained = list.retainFrom(first);
+
+        List<Long> expected = sequences.stream().filter(sequence -> sequence >= first).toList();
+        assertEquals(expected, decodeAll(retained));
+        assertEquals(expected.size(), retained.size());
+        assertFalse(retained.contains(sequences.get(516), buffer));
+        assertTrue(retained.contains(sequences.get(517), buffer));
+    }
+
+    @Test
+    void retainFromKeepsOrDropsWholeLists() {
+        PostingList list = of(List.of(100L, 200L, 300L));
+
+        assertSame(list, list.retainFrom(1));
+        assertSame(list, list.retainFrom(100));
+        assertNull(list.retainFrom(301));
+        assertNull(new PostingList().retainFrom(1));
+        assertEquals(List.of(300L), decodeAll(list.retainFrom(300)));
+    }
+
+    @Test
+    void retainedListAcceptsFurtherAppends() {
+        PostingList list = new PostingList();
+        for (long sequence = 1; sequence <= 500; sequence++) {
+            list.add(sequence * 3);
+        }
+
+        PostingList retained = list.retainFrom(1000);
+        retained.add(5000);
+
+        List<Long> expected = new ArrayList<>();
+        for (long sequence = 334; sequence <= 500; sequence++) {
+            expected.add(sequence * 3);
+        }
+        expected.add(5000L);
+        assertEquals(expected, decodeAll(retained));
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.chat.server;
+
+import com.example.chat.common.Message;
+import com.example.chat.common.MessageType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PresenceTrackerTest {
+    private final ServerState state = new ServerState(0);
+    private final ServerMessageProcessor processor = new ServerMessageProcessor(state);
+    private final PresenceTracker presence = state.getPresence();
+
+    @Test
+    void subscribeDoesNotWaitForASlowFanOut() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingConnection watcher = new RecordingConnection(state, processor, entered, release);
+        state.addUser("watcher", watcher);
+        presence.subscribe(watcher, (version, users) -> snapshot(version));
+
+        CompletableFuture<Boolean> alice = CompletableFuture.supplyAsync(
+                () -> state.addUser("alice", new RecordingConnection(state, processor)));
+        assertTrue(entered.await(5, TimeUnit.SECONDS), "增量扇出应已开始");
+
+        // 扇出阻塞在 watcher 上时已经释放了锁：订阅和读取版本号不必等待，快照已包含 alice
+        RecordingConnection late = new RecordingConnection(state, processor);
+        CompletableFuture.runAsync(() -> presence.subscribe(late, (version, users) -> snapshot(version)))
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(2L, late.received().get(0).getData());
+        assertEquals(2, CompletableFuture.supplyAsync(presence::getVersion).get(5, TimeUnit.SECONDS));
+
+        release.countDown();
+        assertTrue(alice.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void deltasReachOnlySubscribedConnections() {
+        RecordingConnection watcher = new RecordingConnection(state, processor);
+        RecordingConnection legacy = new RecordingConnection(state, processor);
+        state.addUser("watcher", watcher);
+        state.addUser("legacy", legacy);
+        presence.subscribe(watcher, (version, users) -> snapshot(version));
+
+        state.addUser("alice", new RecordingConnection(state, processor));
+        state.removeUser("legacy");
+
+        List<Message> deltas = watcher.received(MessageType.PRESENCE_DELTA);
+        assertEquals(List.of(2L, 3L), watcher.deltaStarts(MessageType.PRESENCE_DELTA));
+        assertEquals(List.of("alice"), ((Map<?, ?>) deltas.get(0).getData()).get("joined"));
+        assertEquals(List.of("legacy"), ((Map<?, ?>) deltas.get(1).getData()).get("left"));
+        assertTrue(legacy.received(MessageType.PRESENCE_DELTA).isEmpty());
+    }
+
+    private static Message snapshot(long version) {
+        return Message.builder().type(MessageType.PRESENCE_SNAPSHOT).data(version).build();
+    }
+}
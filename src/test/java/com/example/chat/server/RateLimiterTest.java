@@ -0,0 +1,158 @@
+package com.example.chat.server;
+
+import com.example.chat.common.Message;
+import com.example.chat.common.MessageType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    @Test
+    void allowsTheBurstThenRejectsWithTheTimeUntilTheNextToken() {
+        RateLimiter limiter = new RateLimiter("ROOM_MESSAGE_REQUEST=1/3");
+        AtomicLongArray buckets = limiter.newBuckets();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.acquire(buckets, MessageType.ROOM_MESSAGE_REQUEST));
+        }
+        long wait = limiter.acquire(buckets, MessageType.ROOM_MESSAGE_REQUEST);
+
+        assertTrue(wait > 0 && wait <= TimeUnit.SECONDS.toNanos(1), "wait " + wait);
+        assertEquals(1, limiter.getRejected());
+    }
+
+    @Test
+    void refillsOneTokenPerInterval() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter("PRIVATE_MESSAGE_REQUEST=20/1"); // 每 50ms 一个令牌
+        AtomicLongArray buckets = limiter.newBuckets();
+
+        assertEquals(0, limiter.acquire(buckets, MessageType.PRIVATE_MESSAGE_REQUEST));
+        long wait = limiter.acquire(buckets, MessageType.PRIVATE_MESSAGE_REQUEST);
+        assertTrue(wait > 0);
+
+        TimeUnit.NANOSECONDS.sleep(wait + TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(0, limiter.acquire(buckets, MessageType.PRIVATE_MESSAGE_REQUEST));
+    }
+
+    @Test
+    void rejectedRequestsDoNotConsumeTokens() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter("PRIVATE_MESSAGE_REQUEST=20/1");
+        AtomicLongArray buckets = limiter.newBuckets();
+        assertEquals(0, limiter.acquire(buckets, MessageType.PRIVATE_MESSAGE_REQUEST));
+
+        long firstWait = limiter.acquire(buckets, MessageType.PRIVATE_MESSAGE_REQUEST);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire(buckets, MessageType.PRIVATE_MESSAGE_REQUEST);
+        }
+        TimeUnit.NANOSECONDS.sleep(firstWait + TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertEquals(0, limiter.acquire(buckets, MessageType.PRIVATE_MESSAGE_REQUEST));
+        assertEquals(101, limiter.getRejected());
+    }
+
+    @Test
+    void typesAndConnectionsHaveIndependentBuckets() {
+        RateLimiter limiter = new RateLimiter("ROOM_MESSAGE_REQUEST=1/1, PRIVATE_MESSAGE_REQUEST=1/1");
+        AtomicLongArray alice = limiter.newBuckets();
+        AtomicLongArray bob = limiter.newBuckets();
+
+        assertEquals(0, limiter.acquire(alice, MessageType.ROOM_MESSAGE_REQUEST));
+        assertTrue(limiter.acquire(alice, MessageType.ROOM_MESSAGE_REQUEST) > 0);
+        assertEquals(0, limiter.acquire(alice, MessageType.PRIVATE_MESSAGE_REQUEST));
+        assertEquals(0, limiter.acquire(bob, MessageType.ROOM_MESSAGE_REQUEST));
+    }
+
+    @Test
+    void unlimitedTypesAlwaysPass() {
+        RateLimiter limiter = new RateLimiter("ROOM_MESSAGE_REQUEST=1/1");
+        AtomicLongArray buckets = limiter.newBuckets();
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, limiter.acquire(buckets, MessageType.USER_LIST_REQUEST));
+        }
+        assertEquals(0, limiter.acquire(buckets, null));
+        assertEquals(0, new RateLimiter(null).acquire(new RateLimiter(null).newBuckets(), MessageType.ROOM_MESSAGE_REQUEST));
+        assertEquals(0, limiter.getRejected());
+    }
+
+    @Test
+    void concurrentAcquiresNeverExceedTheBurst() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter("ROOM_MESSAGE_REQUEST=0.01/50"); // 测试期间不会补充令牌
+        AtomicLongArray buckets = limiter.newBuckets();
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 100; i++) {
+                    if (limiter.acquire(buckets, MessageType.ROOM_MESSAGE_REQUEST) == 0) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(50, granted.get());
+        assertEquals(16 * 100 - 50, limiter.getRejected());
+    }
+
+    @Test
+    void clientsWithoutTheRetryCapabilityGetAnErrorMessage() {
+        ServerState state = new ServerState(0);
+        ServerMessageProcessor processor = new ServerMessageProcessor(state, ServerConfig.RoomExecution.SHARED,
+                new RateLimiter("ROOM_MESSAGE_REQUEST=1/1"));
+        RecordingConnection current = new RecordingConnection(state, processor);
+        RecordingConnection legacy = new RecordingConnection(state, processor);
+        assertTrue(processor.processLogin(Message.createLoginRequest("current"), current));
+        // 旧客户端登录时不带能力声明
+        assertTrue(processor.processLogin(Message.builder().type(MessageType.LOGIN_REQUEST).sender("legacy").build(),
+                legacy));
+
+        for (int i = 0; i < 2; i++) {
+            processor.processMessage(Message.createRoomMessage("hi", "current", "nowhere"), current);
+            processor.processMessage(Message.createRoomMessage("hi", "legacy", "nowhere"), legacy);
+        }
+
+        List<Message> limited = current.received(MessageType.RATE_LIMITED);
+        assertEquals(1, limited.size());
+        assertEquals("ROOM_MESSAGE_REQUEST", ((Map<?, ?>) limited.get(0).getData()).get("requestType"));
+        assertTrue(legacy.received(MessageType.RATE_LIMITED).isEmpty());
+        Message error = legacy.received().get(legacy.received().size() - 1);
+        assertEquals(MessageType.ERROR_MESSAGE, error.getType());
+        assertTrue(error.getContent().startsWith("发送过于频繁"), error.getContent());
+    }
+
+    @Test
+    void rejectsMalformedSpecs() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter("ROOM_MESSAGE_REQUEST=20"));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter("ROOM_MESSAGE_REQUEST=0/5"));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter("ROOM_MESSAGE_REQUEST=5/0"));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter("NO_SUCH_TYPE=5/5"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new RateLimiter("ROOM_MESSAGE_REQUEST=5/5,room_message_request=1/1"));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter("PRESENCE_SNAPSHOT_REQUEST=5/5"));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter("ROOM_DIRECTORY_REQUEST=5/5"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.chat.server;
+
+import com.example.chat.common.EncodedMessage;
+import com.example.chat.common.Message;
+import com.example.chat.common.MessageType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 测试用连接：不做网络 I/O，只记录收到的消息
+ * 可以让第一次广播（sendEncoded）阻塞在 release 上，模拟一个卡住扇出的慢速接收者
+ */
+class RecordingConnection extends ClientConnection {
+    private final List<Message> received = new CopyOnWriteArrayList<>();
+    private final CountDownLatch entered;
+    private final CountDownLatch release;
+
+    RecordingConnection(ServerState state, ServerMessageProcessor processor) {
+        this(state, processor, null, null);
+    }
+
+    /**
+     * @param entered 第一次广播开始时计数减一
+     * @param release 第一次广播等待它归零后才返回
+     */
+    RecordingConnection(ServerState state, ServerMessageProcessor processor, CountDownLatch entered,
+            CountDownLatch release) {
+        super(state, processor);
+        this.entered = entered;
+        this.release = release;
+    }
+
+    @Override
+    public void sendMessage(Message message) {
+        received.add(message);
+    }
+
+    @Override
+    public void sendEncoded(EncodedMessage message, boolean droppable) {
+        if (entered != null && entered.getCount() > 0) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        received.add(message.getMessage());
+    }
+
+    List<Message> received() {
+        return received;
+    }
+
+    List<Message> received(MessageType type) {
+        return received.stream().filter(message -> message.getType() == type).toList();
+    }
+
+    /**
+     * 收到的指定类型增量的起始版本号（data.from），按到达顺序
+     */
+    List<Long> deltaStarts(MessageType type) {
+        return received(type).stream()
+                .map(message -> ((Number) ((Map<?, ?>) message.getData()).get("from")).longValue())
+                .toList();
+    }
+
+    @Override
+    protected void closeTransport() {
+    }
+
+    @Override
+    public int getQueuedMessages() {
+        return 0;
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        return 0;
+    }
+}
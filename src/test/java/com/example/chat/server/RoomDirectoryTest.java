@@ -0,0 +1,67 @@
+package com.example.chat.server;
+
+import com.example.chat.common.Message;
+import com.example.chat.common.MessageType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomDirectoryTest {
+    private final ServerState state = new ServerState(0);
+    private final ServerMessageProcessor processor = new ServerMessageProcessor(state);
+    private final RoomDirectory directory = state.getRoomDirectory();
+
+    @Test
+    void snapshotDoesNotWaitForASlowRecipient() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        state.addUser("slow", new RecordingConnection(state, processor, entered, release));
+
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> publish("r1"));
+        assertTrue(entered.await(5, TimeUnit.SECONDS), "广播应已开始");
+
+        // 广播阻塞在 slow 上时已经释放了锁：快照不必等待，且已包含这次变更
+        RecordingConnection reader = new RecordingConnection(state, processor);
+        CompletableFuture.runAsync(() -> directory.sendSnapshot(reader)).get(5, TimeUnit.SECONDS);
+        assertEquals(1L, ((Map<?, ?>) reader.received().get(0).getData()).get("version"));
+        assertEquals(1, directory.getVersion());
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void updatedNotificationsReachOnlyDirectoryClients() {
+        RecordingConnection current = new RecordingConnection(state, processor);
+        current.setDirectorySubscribed(true);
+        RecordingConnection legacy = new RecordingConnection(state, processor);
+        state.addUser("current", current);
+        state.addUser("legacy", legacy);
+
+        ChatRoom room = new ChatRoom("r1", "owner", "");
+        directory.publish(MessageType.ROOM_CREATED_NOTIFICATION, "", room);
+        directory.publish(MessageType.ROOM_UPDATED_NOTIFICATION, "", room);
+        directory.publish(MessageType.ROOM_DESTROYED_NOTIFICATION, "", room);
+
+        assertEquals(List.of(MessageType.ROOM_CREATED_NOTIFICATION, MessageType.ROOM_UPDATED_NOTIFICATION,
+                MessageType.ROOM_DESTROYED_NOTIFICATION), types(current));
+        // 旧客户端不认识 ROOM_UPDATED_NOTIFICATION，只收到原有的两种通知
+        assertEquals(List.of(MessageType.ROOM_CREATED_NOTIFICATION, MessageType.ROOM_DESTROYED_NOTIFICATION),
+                types(legacy));
+    }
+
+    private static List<MessageType> types(RecordingConnection connection) {
+        return connection.received().stream().map(Message::getType).toList();
+    }
+
+    private void publish(String roomName) {
+        directory.publish(MessageType.ROOM_CREATED_NOTIFICATION, "", new ChatRoom(roomName, "owner", ""));
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.chat.server;
+
+import com.example.chat.common.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomIndexTest {
+    private final ServerState state = new ServerState(0);
+    private final ServerMessageProcessor processor = new ServerMessageProcessor(state);
+    private final RoomIndex index = new RoomIndex();
+
+    @Test
+    void pagesByNameUntilTheCursorRunsOut() {
+        for (String name : List.of("delta", "alpha", "echo", "charlie", "bravo")) {
+            index.add(new ChatRoom(name, "owner", ""));
+        }
+
+        RoomIndex.Page first = index.query(null, RoomIndex.Sort.NAME, null, 2);
+        assertEquals(List.of("alpha", "bravo"), names(first));
+        assertEquals("bravo", first.getNextCursor());
+
+        RoomIndex.Page second = index.query(null, RoomIndex.Sort.NAME, first.getNextCursor(), 2);
+        assertEquals(List.of("charlie", "delta"), names(second));
+
+        RoomIndex.Page last = index.query(null, RoomIndex.Sort.NAME, second.getNextCursor(), 2);
+        assertEquals(List.of("echo"), names(last));
+        assertNull(last.getNextCursor());
+    }
+
+    @Test
+    void nameCursorSurvivesRoomsRemovedBetweenPages() {
+        List<ChatRoom> rooms = new ArrayList<>();
+        for (String name : List.of("a1", "a2", "a3", "a4")) {
+            ChatRoom room = new ChatRoom(name, "owner", "");
+            rooms.add(room);
+            index.add(room);
+        }
+
+        RoomIndex.Page first = index.query(null, RoomIndex.Sort.NAME, null, 2);
+        index.remove(rooms.get(1)); // 游标所指的房间被删除
+        index.remove(rooms.get(2));
+
+        assertEquals(List.of("a4"), names(index.query(null, RoomIndex.Sort.NAME, first.getNextCursor(), 2)));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void prefixLimitsTheNameRange() {
+        for (String name : List.of("game-1", "game-2", "gamer", "music", "gam")) {
+            index.add(new ChatRoom(name, "owner", ""));
+        }
+
+        assertEquals(List.of("game-1", "game-2"), names(index.query("game-", RoomIndex.Sort.NAME, null, 10)));
+        assertEquals(List.of("gam", "game-1", "game-2", "gamer"),
+                names(index.query("gam", RoomIndex.Sort.NAME, null, 10)));
+        assertTrue(index.query("zzz", RoomIndex.Sort.NAME, null, 10).getRooms().isEmpty());
+    }
+
+    @Test
+    void sortsByMemberCountDescendingThenName() {
+        ChatRoom small = room("small", 1);
+        ChatRoom big = room("big", 3);
+        ChatRoom mid = room("mid", 2);
+        ChatRoom tie = room("also-mid", 2);
+        for (ChatRoom room : List.of(small, big, mid, tie)) {
+            index.add(room);
+        }
+
+        RoomIndex.Page first = index.query(null, RoomIndex.Sort.MEMBERS, null, 2);
+        assertEquals(List.of("big", "also-mid"), names(first));
+        assertEquals("2:also-mid", first.getNextCursor());
+        assertEquals(List.of("mid", "small"), names(index.query(null, RoomIndex.Sort.MEMBERS, first.getNextCursor(), 2)));
+    }
+
+    @Test
+    void membersChangedMovesTheRoomAndIgnoresRemovedRooms() {
+        ChatRoom a = room("a", 1);
+        ChatRoom b = room("b", 2);
+        index.add(a);
+        index.add(b);
+
+        a.addMember("extra1", new RecordingConnection(state, processor));
+        a.addMember("extra2", new RecordingConnection(state, processor));
+        index.membersChanged(a);
+        assertEquals(List.of("a", "b"), names(index.query(null, RoomIndex.Sort.MEMBERS, null, 10)));
+
+        index.remove(b);
+        index.membersChanged(b); // 已删除的房间不会被重新插入
+        assertEquals(List.of("a"), names(index.query(null, RoomIndex.Sort.MEMBERS, null, 10)));
+    }
+
+    @Test
+    void touchedMovesTheRoomToTheFrontOfTheActivitySort() throws InterruptedException {
+        ChatRoom quiet = new ChatRoom("quiet", "owner", "");
+        ChatRoom busy = new ChatRoom("busy", "owner", "");
+        index.add(quiet);
+        index.add(busy);
+
+        Thread.sleep(1100); // 活跃时间按秒记录
+        quiet.addMessage(Message.createRoomMessage("hi", "owner", "quiet"));
+        index.touched(quiet);
+
+        assertEquals(List.of("quiet", "busy"), names(index.query(null, RoomIndex.Sort.ACTIVE, null, 10)));
+    }
+
+    @Test
+    void unknownCursorStartsFromTheBeginning() {
+        index.add(room("x", 1));
+        index.add(room("y", 2));
+
+        for (String cursor : new String[] { "garbage", "abc:x", "" }) {
+            assertEquals(List.of("y", "x"), names(index.query(null, RoomIndex.Sort.MEMBERS, cursor, 10)));
+        }
+    }
+
+    @Test
+    void filteredScanStopsAfterMaxScanAndResumesFromItsCursor() {
+        for (int i = 0; i < RoomIndex.MAX_SCAN + 10; i++) {
+            index.add(new ChatRoom(String.format("a%05d", i), "owner", ""));
+        }
+        index.add(new ChatRoom("z", "owner", ""));
+
+        RoomIndex.Page first = index.query("z", RoomIndex.Sort.MEMBERS, null, 10);
+        assertTrue(first.getRooms().isEmpty());
+        assertNotNull(first.getNextCursor());
+
+        RoomIndex.Page second = index.query("z", RoomIndex.Sort.MEMBERS, first.getNextCursor(), 10);
+        assertEquals(List.of("z"), names(second));
+        assertNull(second.getNextCursor());
+    }
+
+    private ChatRoom room(String name, int members) {
+        ChatRoom room = new ChatRoom(name, "owner", "");
+        for (int i = 0; i < members; i++) {
+            room.addMember(name + "-user" + i, new RecordingConnection(state, processor));
+        }
+        return room;
+    }
+
+    private static List<String> names(RoomIndex.Page page) {
+        return page.getRooms().stream().map(ChatRoom::getName).toList();
+    }
+}